@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.bench;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks like the JMH main class but writes JSON results to jmh-result.json by
+ * default so that they can be compared across commits.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        boolean format = false;
+        for (String arg : args) {
+            if ("-rf".equals(arg) || "-rff".equals(arg))
+                format = true;
+        }
+        if (format) {
+            Main.main(args);
+            return;
+        }
+
+        String[] tmp = new String[args.length + 4];
+        System.arraycopy(args, 0, tmp, 0, args.length);
+        tmp[args.length] = "-rf";
+        tmp[args.length + 1] = "json";
+        tmp[args.length + 2] = "-rff";
+        tmp[args.length + 3] = "jmh-result.json";
+        Main.main(tmp);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.bench;
+
+import de.jetsli.lumeo.EdgeVertexBoundSequence;
+import de.jetsli.lumeo.LuceneVertex;
+import de.jetsli.lumeo.RawLucene;
+import de.jetsli.lumeo.util.SearchExecutor;
+import de.jetsli.lumeo.util.TermFilter;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filter execution and edge iteration, the building blocks of every traversal.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilterBenchmark {
+
+    /**
+     * Creates and iterates the DocIdSet of all vertices
+     */
+    @Benchmark public int termFilter(final GraphState s) {
+        final TermFilter filter = new TermFilter(RawLucene.TYPE,
+                s.raw.getMapping("Vertex").toBytes(RawLucene.TYPE, "Vertex"));
+        return s.raw.searchSomething(new SearchExecutor<Integer>() {
+
+            @Override public Integer execute(IndexSearcher searcher) throws Exception {
+                int count = 0;
+                for (AtomicReaderContext ctx : searcher.getTopReaderContext().leaves()) {
+                    DocIdSet set = filter.getDocIdSet(ctx, ctx.reader().getLiveDocs());
+                    if (set == null)
+                        continue;
+                    DocIdSetIterator iter = set.iterator();
+                    if (iter == null)
+                        continue;
+                    while (iter.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        });
+    }
+
+    /**
+     * Iterates the out edges of a random vertex
+     */
+    @Benchmark public int outEdges(GraphState s, Cursor c) {
+        LuceneVertex v = (LuceneVertex) s.g.getVertex(s.userIds[c.next(s)]);
+        EdgeVertexBoundSequence seq = new EdgeVertexBoundSequence(s.g, v, RawLucene.EDGE_OUT);
+        int count = 0;
+        try {
+            while (seq.hasNext()) {
+                seq.next();
+                count++;
+            }
+        } finally {
+            seq.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.bench;
+
+import de.jetsli.lumeo.BulkLoader;
+import de.jetsli.lumeo.LuceneGraph;
+import de.jetsli.lumeo.RawLucene;
+import de.jetsli.lumeo.util.Helper;
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A graph with 'size' vertices and 'degree' random out edges per vertex which is shared between
+ * the benchmark threads. Loaded once per trial via the BulkLoader.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+@State(Scope.Benchmark)
+public class GraphState {
+
+    @Param({"10000", "100000"})
+    public int size;
+    @Param({"ram", "fs"})
+    public String directory;
+    public int degree = 5;
+    public LuceneGraph g;
+    public RawLucene raw;
+    public long[] ids;
+    public String[] userIds;
+    private File dir;
+    // counts the documents written while measuring
+    private final AtomicLong newIds = new AtomicLong();
+
+    @Setup(Level.Trial) public void setUp() {
+        if ("ram".equals(directory))
+            raw = new RawLucene(new RAMDirectory());
+        else if ("fs".equals(directory)) {
+            dir = new File("target/bench-index");
+            Helper.deleteDir(dir);
+            raw = new RawLucene(dir.getPath());
+        } else
+            throw new IllegalArgumentException("Unknown directory type " + directory);
+
+        g = new LuceneGraph(raw.init());
+        ids = new long[size];
+        userIds = new String[size];
+        BulkLoader loader = new BulkLoader(g);
+        for (int i = 0; i < size; i++) {
+            userIds[i] = "v" + i;
+            ids[i] = loader.addVertex(userIds[i]);
+        }
+        Random rand = new Random(1);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < degree; j++) {
+                loader.addEdge(null, ids[i], ids[rand.nextInt(size)], "e" + j);
+            }
+        }
+        loader.close();
+    }
+
+    @TearDown(Level.Trial) public void tearDown() {
+        g.shutdown();
+        if (dir != null)
+            Helper.deleteDir(dir);
+    }
+
+    /**
+     * Cycles through 'size' ids outside of the loaded ones: the first writes insert new vertices,
+     * later writes overwrite them so that the index does not grow from iteration to iteration.
+     */
+    public long newId() {
+        return (1L << 40) + newIds.getAndIncrement() % size;
+    }
+}
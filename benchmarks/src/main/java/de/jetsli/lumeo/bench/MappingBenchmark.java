@@ -0,0 +1,68 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.bench;
+
+import de.jetsli.lumeo.RawLucene;
+import de.jetsli.lumeo.util.Mapping;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.util.BytesRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Field and term creation which is done for every write and every query. Independent of the index.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+    private final Mapping mapping = new Mapping("Vertex");
+
+    {
+        mapping.putField("name", Mapping.Type.STRING_LC);
+        mapping.putField("age", Mapping.Type.LONG);
+    }
+
+    @Benchmark public Field createStringField() {
+        return mapping.createField("name", "Peter");
+    }
+
+    @Benchmark public Field createLongField() {
+        return mapping.createField("age", 42L);
+    }
+
+    @Benchmark public BytesRef stringToBytes() {
+        return mapping.toBytes("name", "Peter");
+    }
+
+    @Benchmark public BytesRef longToBytes() {
+        return mapping.toBytes(RawLucene.ID, 123456789L);
+    }
+}
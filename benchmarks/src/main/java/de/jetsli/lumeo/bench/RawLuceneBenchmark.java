@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.bench;
+
+import com.tinkerpop.blueprints.pgm.Vertex;
+import de.jetsli.lumeo.RawLucene;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.document.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes and id lookups of RawLucene.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RawLuceneBenchmark {
+
+    private static final String VERTEX = Vertex.class.getSimpleName();
+
+    /**
+     * Inserts a new vertex or overwrites one of the previously inserted ones
+     */
+    @Benchmark public long put(GraphState s) {
+        long id = s.newId();
+        String uId = Long.toString(id);
+        return s.raw.put(uId, id, s.raw.createDocument(uId, id, Vertex.class));
+    }
+
+    /**
+     * Overwrites an existing vertex
+     */
+    @Benchmark public long fastPut(GraphState s, Cursor c) {
+        int i = c.next(s);
+        return s.raw.fastPut(s.ids[i], s.raw.createDocument(s.userIds[i], s.ids[i], Vertex.class));
+    }
+
+    @Benchmark public Document findById(GraphState s, Cursor c) {
+        return s.raw.findById(s.ids[c.next(s)]);
+    }
+
+    @Benchmark public Document findByUserId(GraphState s, Cursor c) {
+        return s.raw.findByUserId(s.userIds[c.next(s)]);
+    }
+
+    @Benchmark public long count(GraphState s) {
+        return s.g.count(Vertex.class, RawLucene.TYPE, VERTEX);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo;
+
+import com.tinkerpop.blueprints.pgm.Edge;
+import com.tinkerpop.blueprints.pgm.Vertex;
+import de.jetsli.lumeo.util.Mapping;
+import de.jetsli.lumeo.util.Source;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.lucene.document.Document;
+
+/**
+ * Loads a lot of vertices and edges into an empty or append only graph. In contrast to
+ * LuceneGraph.addVertex/addEdge user ids and vertex ids are trusted and not checked, documents
+ * bypass the realtime cache and the NRT reopen, and batches are added from several threads.
+ * Adjacency needs no extra pass as edges reference their vertices via _vout and _vin.
+ *
+ * Not thread safe: use one loader per producer. Call close to make everything searchable.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class BulkLoader {
+
+    private static final String VERTEX_TYPE = Vertex.class.getSimpleName();
+    private static final String EDGE_TYPE = Edge.class.getSimpleName();
+    private final LuceneGraph g;
+    private final RawLucene rl;
+    private final Mapping vertexMapping;
+    private final Mapping edgeMapping;
+    private final ThreadPoolExecutor executor;
+    private final AtomicReference<Exception> error = new AtomicReference<Exception>();
+    private int batchSize = 1000;
+    private List<Document> vertices;
+    private List<Document> edges;
+    private long vertexCount;
+    private long edgeCount;
+    private boolean closed = false;
+
+    public BulkLoader(LuceneGraph g) {
+        this(g, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BulkLoader(LuceneGraph g, int threads) {
+        this.g = g;
+        rl = g.getRaw();
+        vertexMapping = g.getMapping(VERTEX_TYPE);
+        edgeMapping = g.getMapping(EDGE_TYPE);
+        // if all workers are busy the producer adds the batch itself
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        vertices = new ArrayList<Document>(batchSize);
+        edges = new ArrayList<Document>(batchSize);
+    }
+
+    public BulkLoader setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @return the internal id of the new vertex
+     */
+    public long addVertex(String userId) {
+        return addVertex(userId, null);
+    }
+
+    public long addVertex(String userId, Map<String, Object> properties) {
+        checkState();
+        long id = g.nextId();
+        if (userId == null)
+            userId = Long.toString(id);
+
+        Document doc = rl.createDocument(userId, id, Vertex.class);
+        if (properties != null)
+            rl.addSource(doc, vertexMapping, toSource(properties));
+
+        vertices.add(doc);
+        vertexCount++;
+        if (vertices.size() >= batchSize) {
+            submit(vertices, VERTEX_TYPE);
+            vertices = new ArrayList<Document>(batchSize);
+        }
+        return id;
+    }
+
+    /**
+     * @return the internal id of the new edge
+     */
+    public long addEdge(String userId, long outVertexId, long inVertexId, String label) {
+        return addEdge(userId, outVertexId, inVertexId, label, null);
+    }
+
+    public long addEdge(String userId, long outVertexId, long inVertexId, String label, Map<String, Object> properties) {
+        checkState();
+        long id = g.nextId();
+        if (userId == null)
+            userId = Long.toString(id);
+
+        Document doc = rl.createDocument(userId, id, Edge.class);
+        doc.add(edgeMapping.createField(RawLucene.EDGE_LABEL, label));
+        rl.initRelation(doc, outVertexId, inVertexId);
+        if (properties != null)
+            rl.addSource(doc, edgeMapping, toSource(properties));
+
+        edges.add(doc);
+        edgeCount++;
+        if (edges.size() >= batchSize) {
+            submit(edges, EDGE_TYPE);
+            edges = new ArrayList<Document>(batchSize);
+        }
+        return id;
+    }
+
+    private static Source toSource(Map<String, Object> properties) {
+        Source source = new Source();
+        source.asMap().putAll(properties);
+        return source;
+    }
+
+    private void submit(final List<Document> docs, final String type) {
+        executor.execute(new Runnable() {
+
+            @Override public void run() {
+                try {
+                    rl.bulkAdd(docs, type);
+                } catch (Exception ex) {
+                    fail(ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Remembers the first failure of a worker. It is thrown by the next add or by close.
+     */
+    void fail(Exception ex) {
+        error.compareAndSet(null, ex);
+    }
+
+    boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    private void checkState() {
+        if (closed)
+            throw new IllegalStateException("Already closed");
+        Exception ex = error.get();
+        if (ex != null)
+            throw new RuntimeException("Bulk loading failed", ex);
+    }
+
+    public long getVertexCount() {
+        return vertexCount;
+    }
+
+    public long getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Adds the remaining documents, waits for all workers and makes the documents searchable.
+     */
+    public void close() {
+        if (closed)
+            throw new IllegalStateException("Already closed");
+        closed = true;
+        try {
+            // after a failure the remaining documents are not added
+            if (error.get() == null) {
+                if (!vertices.isEmpty())
+                    submit(vertices, VERTEX_TYPE);
+                if (!edges.isEmpty())
+                    submit(edges, EDGE_TYPE);
+            }
+        } finally {
+            vertices = null;
+            edges = null;
+            // the pool threads are no daemons, so they have to be stopped in any case
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            }
+        }
+
+        Exception ex = error.get();
+        if (ex != null)
+            throw new RuntimeException("Bulk loading failed", ex);
+        rl.refresh();
+    }
+
+    @Override public String toString() {
+        return "bulk loader v:" + vertexCount + " e:" + edgeCount + " " + rl;
+    }
+}
@@ -30,6 +30,8 @@ public class EdgeFilterSequence extends LuceneFilterSequence<Edge> {
     }
 
     @Override protected Edge createElement(Document doc) {
-        return new LuceneEdge(g, doc);
+        LuceneEdge e = new LuceneEdge(g, doc);
+        e.setPartial(isPartial());
+        return e;
     }
 }
@@ -15,16 +15,17 @@
  */
 package de.jetsli.lumeo;
 
-import de.jetsli.lumeo.util.KeywordAnalyzerLowerCase;
+import com.tinkerpop.blueprints.pgm.Edge;
+import de.jetsli.lumeo.util.AndFilter;
 import de.jetsli.lumeo.util.LuceneHelper;
 import de.jetsli.lumeo.util.TermFilter;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.queries.BooleanFilter;
-import org.apache.lucene.queries.TermsFilter;
-import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.search.Filter;
 
 /**
+ * The in or out edges of a vertex. If the graph uses the snapshot for traversals and it is
+ * current for the searcher of this sequence, the edges of one direction are read from the rows of
+ * the vertex instead of searching the index. Their properties are loaded on demand.
  *
  * @author Peter Karich, info@jetsli.de
  */
@@ -33,7 +34,17 @@ public class EdgeVertexBoundSequence extends EdgeFilterSequence {
     private final LuceneVertex vertexDoc;
     private final String[] edgeTypes;
     private String[] edgeLabels;
-    private BooleanFilter edgeFilter;
+    private AndFilter edgeFilter;
+    private boolean snapshotChecked;
+    // null if the index is searched
+    private GraphSnapshot snapshot;
+    private boolean out;
+    private int index;
+    private int pos;
+    private int end;
+    // null accepts all labels
+    private int[] labelOrdinals;
+    private Document edgeDoc;
 
     public EdgeVertexBoundSequence(LuceneGraph g, LuceneVertex vertex, String... edgeTypes) {
         super(g);
@@ -48,29 +59,88 @@ public class EdgeVertexBoundSequence extends EdgeFilterSequence {
 
     @Override public Filter getBaseFilter() {
         if (edgeFilter == null) {
-            // 1. restrict to edges only
-            edgeFilter = new BooleanFilter();
-            edgeFilter.add(super.getBaseFilter(), Occur.MUST);
-
-            // 2. restrict to in or out edges
-            if (edgeTypes != null) {
-                if (edgeTypes.length == 1) {
-                    String vertexField = RawLucene.getVertexFieldForEdgeType(edgeTypes[0]);
-                    edgeFilter.add(new TermFilter(vertexField,
-                            LuceneHelper.newRefFromLong((Long) vertexDoc.getId())), Occur.MUST);
-                }
-                // no restriction as both types are accepted
-            }
+            edgeFilter = new AndFilter();
+            if (edgeTypes != null && edgeTypes.length == 1) {
+                // restrict to in or out edges. Only edges have vertex fields, so the type
+                // restriction is not necessary
+                String vertexField = RawLucene.getVertexFieldForEdgeType(edgeTypes[0]);
+                edgeFilter.add(new TermFilter(vertexField,
+                        LuceneHelper.newRefFromLong((Long) vertexDoc.getId())));
+            } else
+                // restrict to edges only, no vertex restriction as both types are accepted
+                edgeFilter.add(super.getBaseFilter());
 
-            // 3. restrict to one or more edge labels
-            if (edgeLabels != null && edgeLabels.length > 0) {
-                TermsFilter tf = new TermsFilter();
-                for (String label : edgeLabels) {
-                    tf.addTerm(new Term(RawLucene.EDGE_LABEL, KeywordAnalyzerLowerCase.transform(label)));
-                }
-                edgeFilter.add(tf, Occur.MUST);
-            }
+            // restrict to one or more edge labels
+            if (edgeLabels != null && edgeLabels.length > 0)
+                edgeFilter.add(g.getRaw().getEdgeLabels().newFilter(edgeLabels));
         }
         return edgeFilter;
     }
+
+    private void initSnapshot() {
+        snapshotChecked = true;
+        if (edgeTypes == null || edgeTypes.length != 1 || isRestricted())
+            return;
+
+        String vertexField = RawLucene.getVertexFieldForEdgeType(edgeTypes[0]);
+        GraphSnapshot s = g.getTraversalSnapshot(getSearcher());
+        if (s == null)
+            return;
+
+        out = RawLucene.VERTEX_OUT.equals(vertexField);
+        index = s.indexOf((Long) vertexDoc.getId());
+        if (index >= 0) {
+            pos = out ? s.outStart(index) : s.inStart(index);
+            end = out ? s.outStart(index + 1) : s.inStart(index + 1);
+        }
+        if (edgeLabels != null && edgeLabels.length > 0) {
+            labelOrdinals = new int[edgeLabels.length];
+            for (int i = 0; i < edgeLabels.length; i++) {
+                labelOrdinals[i] = s.getLabelOrdinal(edgeLabels[i]);
+            }
+        }
+        snapshot = s;
+    }
+
+    private boolean acceptLabel(int label) {
+        if (labelOrdinals == null)
+            return true;
+        for (int i = 0; i < labelOrdinals.length; i++) {
+            if (label >= 0 && labelOrdinals[i] == label)
+                return true;
+        }
+        return false;
+    }
+
+    @Override public boolean hasNext() {
+        if (!snapshotChecked)
+            initSnapshot();
+        if (snapshot == null)
+            return super.hasNext();
+
+        while (pos < end && !acceptLabel(out ? snapshot.getOutLabel(pos) : snapshot.getInLabel(pos))) {
+            pos++;
+        }
+        return pos < end;
+    }
+
+    @Override public Edge next() {
+        if (!hasNext())
+            throw new UnsupportedOperationException("no further element");
+        if (snapshot == null)
+            return super.next();
+
+        edgeDoc = out ? snapshot.createOutEdgeDocument(index, pos) : snapshot.createInEdgeDocument(index, pos);
+        pos++;
+        LuceneEdge e = new LuceneEdge(g, edgeDoc);
+        e.setPartial(true);
+        return e;
+    }
+
+    @Override public void remove() {
+        if (snapshot == null)
+            super.remove();
+        else
+            g.getRaw().removeDoc(edgeDoc);
+    }
 }
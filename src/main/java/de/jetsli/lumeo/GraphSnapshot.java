@@ -0,0 +1,456 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo;
+
+import com.tinkerpop.blueprints.pgm.Edge;
+import com.tinkerpop.blueprints.pgm.Vertex;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.SorterTemplate;
+
+/**
+ * A read only compressed sparse row (CSR) view of the graph for one reader version. Vertices are
+ * addressed by their position in the sorted array of internal ids, and the out and in neighbors of
+ * a vertex are stored consecutively. Reading the snapshot does not allocate and does not touch
+ * Lucene, but edges added after the snapshot was created are not visible (see isCurrent). Only
+ * live vertices have rows: an edge to a removed vertex is only in the row of its other vertex.
+ *
+ * The columns are memory mapped from a file (max. 2GB per column). They are written segment by
+ * segment from the FieldCache in three passes over the live documents: the vertex ids, the row
+ * lengths and the rows. So creating a snapshot needs no heap besides the FieldCache and the label
+ * ordinals, but it reads all segments and costs O(edges log vertices).
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class GraphSnapshot {
+
+    private static final String VERTEX = Vertex.class.getSimpleName();
+    private static final String EDGE = Edge.class.getSimpleName();
+    private final long version;
+    private final File file;
+    private final int vertices;
+    private final int edges;
+    private final LongBuffer vertexIds;
+    private final IntBuffer outOffsets;
+    private final LongBuffer outTargets;
+    private final LongBuffer outEdges;
+    private final IntBuffer outLabels;
+    private final IntBuffer inOffsets;
+    private final LongBuffer inTargets;
+    private final LongBuffer inEdges;
+    private final IntBuffer inLabels;
+    private final List<String> labels = new ArrayList<String>();
+    private final Map<String, Integer> labelOrdinals = new HashMap<String, Integer>();
+
+    private GraphSnapshot(RawLucene raw, IndexSearcher searcher, File file) throws IOException {
+        this.version = getVersion(searcher);
+        this.file = file;
+        // the same cached filters as the sequences use, so the type bytes are those of RawLucene
+        Filter vertexFilter = raw.getTypeFilter(VERTEX);
+        Filter edgeFilter = raw.getTypeFilter(EDGE);
+        AtomicReaderContext[] arc = searcher.getTopReaderContext().leaves();
+        long vertexDocs = 0;
+        long edgeDocs = 0;
+        for (int i = 0; i < arc.length; i++) {
+            vertexDocs += count(iterator(vertexFilter, arc[i]));
+            edgeDocs += count(iterator(edgeFilter, arc[i]));
+        }
+        if (Math.max(vertexDocs, edgeDocs) > Integer.MAX_VALUE / 8)
+            throw new UnsupportedOperationException("Snapshot too large for a single mapping per column, vertices:"
+                    + vertexDocs + " edges:" + edgeDocs);
+        edges = (int) edgeDocs;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            Columns c = new Columns(raf.getChannel());
+            vertexIds = c.longs(vertexDocs);
+            outTargets = c.longs(edges);
+            outEdges = c.longs(edges);
+            inTargets = c.longs(edges);
+            inEdges = c.longs(edges);
+            outOffsets = c.ints(vertexDocs + 1);
+            inOffsets = c.ints(vertexDocs + 1);
+            outLabels = c.ints(edges);
+            inLabels = c.ints(edges);
+        } finally {
+            // the mappings stay valid after closing the channel
+            raf.close();
+        }
+
+        int count = 0;
+        for (int i = 0; i < arc.length; i++) {
+            DocIdSetIterator docs = iterator(vertexFilter, arc[i]);
+            if (docs == null)
+                continue;
+            long[] ids = getLongs(arc[i].reader(), RawLucene.ID);
+            int doc;
+            while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                vertexIds.put(count++, ids[doc]);
+            }
+        }
+        vertices = sortUnique(vertexIds, count);
+
+        // segment ordinal -> snapshot ordinal of the edge labels per segment
+        int[][] ordMappings = new int[arc.length][];
+        for (int i = 0; i < arc.length; i++) {
+            DocIdSetIterator docs = iterator(edgeFilter, arc[i]);
+            if (docs == null)
+                continue;
+            AtomicReader reader = arc[i].reader();
+            long[] outs = getLongs(reader, RawLucene.VERTEX_OUT);
+            long[] ins = getLongs(reader, RawLucene.VERTEX_IN);
+            ordMappings[i] = mapLabels(FieldCache.DEFAULT.getTermsIndex(reader, RawLucene.EDGE_LABEL));
+            int doc;
+            while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                increment(outOffsets, indexOf(outs[doc]) + 1);
+                increment(inOffsets, indexOf(ins[doc]) + 1);
+            }
+        }
+        for (int i = 1; i <= vertices; i++) {
+            outOffsets.put(i, outOffsets.get(i) + outOffsets.get(i - 1));
+            inOffsets.put(i, inOffsets.get(i) + inOffsets.get(i - 1));
+        }
+
+        // the offsets are the positions to write to and end up as the starts of the next rows
+        for (int i = 0; i < arc.length; i++) {
+            DocIdSetIterator docs = iterator(edgeFilter, arc[i]);
+            if (docs == null)
+                continue;
+            AtomicReader reader = arc[i].reader();
+            long[] ids = getLongs(reader, RawLucene.ID);
+            long[] outs = getLongs(reader, RawLucene.VERTEX_OUT);
+            long[] ins = getLongs(reader, RawLucene.VERTEX_IN);
+            FieldCache.DocTermsIndex labelIndex = FieldCache.DEFAULT.getTermsIndex(reader, RawLucene.EDGE_LABEL);
+            int doc;
+            while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                // ordinal 0 means no label
+                int segOrd = labelIndex.getOrd(doc);
+                int label = segOrd > 0 ? ordMappings[i][segOrd] : -1;
+                int index = indexOf(outs[doc]);
+                if (index >= 0) {
+                    int pos = outOffsets.get(index);
+                    outOffsets.put(index, pos + 1);
+                    outTargets.put(pos, ins[doc]);
+                    outEdges.put(pos, ids[doc]);
+                    outLabels.put(pos, label);
+                }
+                index = indexOf(ins[doc]);
+                if (index >= 0) {
+                    int pos = inOffsets.get(index);
+                    inOffsets.put(index, pos + 1);
+                    inTargets.put(pos, outs[doc]);
+                    inEdges.put(pos, ids[doc]);
+                    inLabels.put(pos, label);
+                }
+            }
+        }
+        for (int i = vertices; i > 0; i--) {
+            outOffsets.put(i, outOffsets.get(i - 1));
+            inOffsets.put(i, inOffsets.get(i - 1));
+        }
+        outOffsets.put(0, 0);
+        inOffsets.put(0, 0);
+    }
+
+    /**
+     * Creates a snapshot of all live vertices and edges visible to the specified searcher.
+     *
+     * @param file the file the snapshot is memory mapped into. It is overwritten.
+     */
+    public static GraphSnapshot create(RawLucene raw, IndexSearcher searcher, File file) throws IOException {
+        return new GraphSnapshot(raw, searcher, file);
+    }
+
+    static long getVersion(IndexSearcher searcher) {
+        return ((DirectoryReader) searcher.getIndexReader()).getVersion();
+    }
+
+    private static DocIdSetIterator iterator(Filter filter, AtomicReaderContext ctx) throws IOException {
+        DocIdSet set = filter.getDocIdSet(ctx, ctx.reader().getLiveDocs());
+        return set == null ? null : set.iterator();
+    }
+
+    private static long count(DocIdSetIterator docs) throws IOException {
+        if (docs == null)
+            return 0;
+        long count = 0;
+        while (docs.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+            count++;
+        }
+        return count;
+    }
+
+    private static long[] getLongs(AtomicReader reader, String field) throws IOException {
+        return FieldCache.DEFAULT.getLongs(reader, field, FieldCache.NUMERIC_UTILS_LONG_PARSER, false);
+    }
+
+    private static void increment(IntBuffer buffer, int index) {
+        // 0 if the vertex is not in the snapshot
+        if (index > 0)
+            buffer.put(index, buffer.get(index) + 1);
+    }
+
+    /**
+     * @return the number of unique ids which are now at the beginning of the buffer
+     */
+    private static int sortUnique(final LongBuffer ids, int size) {
+        if (size < 2)
+            return size;
+
+        new SorterTemplate() {
+
+            private long pivot;
+
+            @Override protected void swap(int i, int j) {
+                long tmp = ids.get(i);
+                ids.put(i, ids.get(j));
+                ids.put(j, tmp);
+            }
+
+            @Override protected int compare(int i, int j) {
+                return compare(ids.get(i), ids.get(j));
+            }
+
+            @Override protected void setPivot(int i) {
+                pivot = ids.get(i);
+            }
+
+            @Override protected int comparePivot(int j) {
+                return compare(pivot, ids.get(j));
+            }
+
+            private int compare(long a, long b) {
+                return a < b ? -1 : (a == b ? 0 : 1);
+            }
+        }.quickSort(0, size - 1);
+
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || ids.get(unique - 1) != ids.get(i))
+                ids.put(unique++, ids.get(i));
+        }
+        return unique;
+    }
+
+    private int[] mapLabels(FieldCache.DocTermsIndex labelIndex) {
+        int[] ordMapping = new int[labelIndex.numOrd()];
+        BytesRef spare = new BytesRef();
+        for (int ord = 1; ord < ordMapping.length; ord++) {
+            String label = labelIndex.lookup(ord, spare).utf8ToString();
+            Integer snapshotOrd = labelOrdinals.get(label);
+            if (snapshotOrd == null) {
+                snapshotOrd = labels.size();
+                labels.add(label);
+                labelOrdinals.put(label, snapshotOrd);
+            }
+            ordMapping[ord] = snapshotOrd;
+        }
+        return ordMapping;
+    }
+
+    /**
+     * @return true if the snapshot still reflects what the specified searcher sees
+     */
+    public boolean isCurrent(IndexSearcher searcher) {
+        return getVersion(searcher) == version;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getVertexCount() {
+        return vertices;
+    }
+
+    /**
+     * @return the number of live edges including those of removed vertices
+     */
+    public int getEdgeCount() {
+        return edges;
+    }
+
+    /**
+     * @return the position of the vertex or -1 if not in this snapshot
+     */
+    public int indexOf(long vertexId) {
+        int low = 0;
+        int high = vertices - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midVal = vertexIds.get(mid);
+            if (midVal < vertexId)
+                low = mid + 1;
+            else if (midVal > vertexId)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    public long getVertexId(int index) {
+        return vertexIds.get(index);
+    }
+
+    /** The out edges of the vertex at position index are in [outStart(index), outStart(index + 1)) */
+    public int outStart(int index) {
+        return outOffsets.get(index);
+    }
+
+    public int inStart(int index) {
+        return inOffsets.get(index);
+    }
+
+    public int getOutDegree(int index) {
+        return outOffsets.get(index + 1) - outOffsets.get(index);
+    }
+
+    public int getInDegree(int index) {
+        return inOffsets.get(index + 1) - inOffsets.get(index);
+    }
+
+    /** @return the id of the in vertex of the out edge at position pos */
+    public long getOutTarget(int pos) {
+        return outTargets.get(pos);
+    }
+
+    public long getOutEdge(int pos) {
+        return outEdges.get(pos);
+    }
+
+    public int getOutLabel(int pos) {
+        return outLabels.get(pos);
+    }
+
+    /** @return the id of the out vertex of the in edge at position pos */
+    public long getInTarget(int pos) {
+        return inTargets.get(pos);
+    }
+
+    public long getInEdge(int pos) {
+        return inEdges.get(pos);
+    }
+
+    public int getInLabel(int pos) {
+        return inLabels.get(pos);
+    }
+
+    /**
+     * @return the ordinal of the edge label or -1 if the label is not in this snapshot
+     */
+    public int getLabelOrdinal(String label) {
+        Integer ord = labelOrdinals.get(label);
+        if (ord == null)
+            return -1;
+        return ord;
+    }
+
+    public String getLabel(int ordinal) {
+        return labels.get(ordinal);
+    }
+
+    /**
+     * @return the header fields of the vertex at position index without the user id
+     */
+    Document createVertexDocument(int index) {
+        Document doc = new Document();
+        doc.add(new StoredField(RawLucene.TYPE, VERTEX));
+        doc.add(new StoredField(RawLucene.ID, getVertexId(index)));
+        return doc;
+    }
+
+    /**
+     * @return the header fields of the out edge at position pos of the vertex at position index
+     * without the user id
+     */
+    Document createOutEdgeDocument(int index, int pos) {
+        return createEdgeDocument(getOutEdge(pos), getVertexId(index), getOutTarget(pos), getOutLabel(pos));
+    }
+
+    Document createInEdgeDocument(int index, int pos) {
+        return createEdgeDocument(getInEdge(pos), getInTarget(pos), getVertexId(index), getInLabel(pos));
+    }
+
+    private Document createEdgeDocument(long id, long outId, long inId, int label) {
+        Document doc = new Document();
+        doc.add(new StoredField(RawLucene.TYPE, EDGE));
+        doc.add(new StoredField(RawLucene.ID, id));
+        doc.add(new StoredField(RawLucene.VERTEX_OUT, outId));
+        doc.add(new StoredField(RawLucene.VERTEX_IN, inId));
+        if (label >= 0)
+            doc.add(new StoredField(RawLucene.EDGE_LABEL, getLabel(label)));
+        return doc;
+    }
+
+    /**
+     * Removes the file of the snapshot. On most platforms the mapped columns stay readable until
+     * the snapshot is garbage collected, so a sequence still reading it is not affected.
+     */
+    public void close() {
+        if (!file.delete())
+            file.deleteOnExit();
+    }
+
+    @Override public String toString() {
+        return "snapshot v:" + vertices + " e:" + edges + " version:" + version + " " + file;
+    }
+
+    /**
+     * Maps consecutive regions of the file, longs first to keep them aligned
+     */
+    private static class Columns {
+
+        private final FileChannel channel;
+        private long position;
+
+        Columns(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        LongBuffer longs(long size) throws IOException {
+            LongBuffer lb = channel.map(FileChannel.MapMode.READ_WRITE, position, 8 * size).asLongBuffer();
+            position += 8 * size;
+            return lb;
+        }
+
+        IntBuffer ints(long size) throws IOException {
+            IntBuffer ib = channel.map(FileChannel.MapMode.READ_WRITE, position, 4 * size).asIntBuffer();
+            position += 4 * size;
+            return ib;
+        }
+    }
+}
@@ -31,18 +31,12 @@ public class LuceneAutomaticIndex<T extends Element> extends LuceneIndex<T> impl
     }
 
     protected void autoUpdate(final String key, final Object newValue, final Object oldValue, final T element) {
-        // accept all keys to store them
-        if (oldValue != null)
-            removeField(key, element);
-
-        putField(m.createField(key, newValue), element);
-        g.getRaw().fastPut((Long) element.getId(), ((LuceneElement) element).getRaw());
+        // accept all keys to store them. Mapped keys get indexed while saving the element
+        ((LuceneElement) element).putProperty(key, newValue);
     }
 
     protected void autoRemove(final String key, final Object oldValue, final T element) {
-        // accept all keys to remove stored
-        removeField(key, element);
-        g.getRaw().fastPut((Long) element.getId(), ((LuceneElement) element).getRaw());
+        element.removeProperty(key);
     }
 
     @Override public CloseableSequence<T> get(final String key, final Object value) {
@@ -52,6 +46,13 @@ public class LuceneAutomaticIndex<T extends Element> extends LuceneIndex<T> impl
             throw new UnsupportedOperationException("key not indexed " + key);
     }
 
+    @Override public CloseableSequence<T> range(final String key, final Object from, final Object to) {
+        if (handle(key))
+            return super.range(key, from, to);
+        else
+            throw new UnsupportedOperationException("key not indexed " + key);
+    }
+
     @Override public void put(String key, Object value, T element) {
         if (handle(key))
             super.put(key, value, element);
@@ -4,8 +4,8 @@ import com.tinkerpop.blueprints.pgm.AutomaticIndex;
 import com.tinkerpop.blueprints.pgm.Edge;
 import com.tinkerpop.blueprints.pgm.Vertex;
 import com.tinkerpop.blueprints.pgm.impls.StringFactory;
+import de.jetsli.lumeo.util.RealtimeCache;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.LongField;
 //import org.apache.lucene.document.NumericField;
 
 /**
@@ -31,19 +31,30 @@ public class LuceneEdge extends LuceneElement implements Edge {
     }
 
     @Override public Vertex getOutVertex() {
-        long id = ((LongField) getRaw().getField(RawLucene.VERTEX_OUT)).numericValue().longValue();
-        Document doc = g.getRaw().findById(id);
-        if (doc == null)
-            throw new NullPointerException("Didn't found out vertex of edge with id " + id);
-        return new LuceneVertex(g, doc);
+        return loadVertex(RawLucene.VERTEX_OUT, "out");
     }
 
     @Override public Vertex getInVertex() {
-        long id = ((LongField) getRaw().getField(RawLucene.VERTEX_IN)).numericValue().longValue();
-        Document doc = g.getRaw().findById(id);
+        return loadVertex(RawLucene.VERTEX_IN, "in");
+    }
+
+    private Vertex loadVertex(String vertexField, String direction) {
+        long id = getRaw().getField(vertexField).numericValue().longValue();
+        RawLucene raw = g.getRaw();
+        Document doc = raw.findCachedById(id);
+        // a vertex from the snapshot or the index is partial, its properties are loaded on demand
+        boolean partial = doc == null;
+        if (partial) {
+            doc = g.findVertexInSnapshot(id);
+            if (doc == null)
+                doc = raw.loadById(id, RawLucene.HEADER_FIELDS);
+        } else if (doc == RealtimeCache.DELETED)
+            doc = null;
         if (doc == null)
-            throw new NullPointerException("Didn't found in vertex of edge with id " + id);
-        return new LuceneVertex(g, doc);
+            throw new NullPointerException("Didn't found " + direction + " vertex of edge with id " + id);
+        LuceneVertex v = new LuceneVertex(g, doc);
+        v.setPartial(partial);
+        return v;
     }
 
     @Override public boolean equals(final Object object) {
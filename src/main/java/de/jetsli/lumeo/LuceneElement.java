@@ -1,6 +1,7 @@
 package de.jetsli.lumeo;
 
 import de.jetsli.lumeo.util.Mapping;
+import de.jetsli.lumeo.util.Source;
 import com.tinkerpop.blueprints.pgm.Edge;
 import com.tinkerpop.blueprints.pgm.Element;
 import com.tinkerpop.blueprints.pgm.impls.StringFactory;
@@ -11,6 +12,7 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.LongField;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
 
 /**
  * @author Peter Karich, info@jetsli.de
@@ -20,6 +22,10 @@ public abstract class LuceneElement implements Element {
     protected final LuceneGraph g;
     protected Document rawElement;
     private Mapping m;
+    // lazily decoded from the _source field
+    private Source source;
+    // true if only (some of) the HEADER_FIELDS were loaded
+    private boolean partial;
 
     public LuceneElement(LuceneGraph graph, Document doc) {
         if (doc == null)
@@ -29,33 +35,63 @@ public abstract class LuceneElement implements Element {
         m = g.getMapping(getType());
     }
 
+    /**
+     * Marks the document as partially loaded. The remaining fields are loaded on the first access
+     * of a property.
+     */
+    void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    private void ensureLoaded() {
+        if (!partial)
+            return;
+
+        Document doc = g.getRaw().findById((Long) getId());
+        if (doc == null)
+            throw new IllegalStateException("Element " + getId() + " was removed");
+        rawElement = doc;
+        partial = false;
+    }
+
     @Override public Object getProperty(final String key) {
-        return rawElement.get(key);
+        if (RawLucene.isSystemField(key)) {
+            // a header from the snapshot has no user id
+            if (!RawLucene.HEADER_FIELDS.contains(key) || rawElement.getField(key) == null)
+                ensureLoaded();
+            return rawElement.get(key);
+        }
+        return getSource().get(key);
     }
 
     @Override public void setProperty(final String key, final Object value) {
         if (key.equals(RawLucene.ID) || key.equals(RawLucene.TYPE)
                 || (this instanceof Edge && key.equals(RawLucene.EDGE_LABEL)))
             throw new RuntimeException(key + StringFactory.PROPERTY_EXCEPTION_MESSAGE);
+        if (value == null)
+            throw new IllegalArgumentException("Property value must not be null:" + key);
 
         try {
-            Object oldValue = this.getProperty(key);
-            for (LuceneAutomaticIndex autoIndex : this.g.getAutoIndices(this.getClass())) {
-                autoIndex.autoUpdate(key, value, oldValue, this);
-            }
+            putProperty(key, value);
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
+    void putProperty(final String key, final Object value) {
+        getSource().put(key, value);
+        save();
+    }
+
     @Override public Object removeProperty(final String key) {
         try {
-            String oldValue = rawElement.get(key);
-            rawElement.removeField(key);
+            Object oldValue = getSource().remove(key);
             if (oldValue != null)
-                for (LuceneAutomaticIndex autoIndex : this.g.getAutoIndices(this.getClass())) {
-                    autoIndex.autoRemove(key, oldValue, this);
-                }
+                save();
 
             return oldValue;
         } catch (Exception e) {
@@ -64,13 +100,50 @@ public abstract class LuceneElement implements Element {
     }
 
     @Override public Set<String> getPropertyKeys() {
+        ensureLoaded();
         final Set<String> keys = new HashSet<String>();
         for (final IndexableField key : this.rawElement.getFields()) {
-            keys.add(key.name());
+            if (RawLucene.isSystemField(key.name()) && !RawLucene.SOURCE.equals(key.name()))
+                keys.add(key.name());
         }
+        keys.addAll(getSource().keys());
         return keys;
     }
 
+    Source getSource() {
+        if (source == null) {
+            ensureLoaded();
+            BytesRef bytes = rawElement.getBinaryValue(RawLucene.SOURCE);
+            if (bytes != null)
+                source = new Source(bytes);
+            else {
+                // documents indexed before the source field was introduced
+                source = new Source();
+                for (IndexableField f : rawElement.getFields()) {
+                    if (!RawLucene.isSystemField(f.name()))
+                        source.put(f.name(), f.numericValue() != null ? f.numericValue() : f.stringValue());
+                }
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Reindexes this element. Mapped properties get indexed, all are stored in the source.
+     */
+    void save() {
+        g.getRaw().fastPut((Long) getId(), createIndexDocument());
+    }
+
+    /**
+     * @return the document to write for the current properties
+     */
+    Document createIndexDocument() {
+        // getSource first as it could replace a partially loaded document
+        Source s = getSource();
+        return rawElement = g.getRaw().createIndexDocument(rawElement, s);
+    }
+
     @Override public int hashCode() {
         return this.getId().hashCode();
     }
@@ -15,21 +15,46 @@
  */
 package de.jetsli.lumeo;
 
+import de.jetsli.lumeo.util.AndFilter;
+import de.jetsli.lumeo.util.AnyExecutor;
 import de.jetsli.lumeo.util.Mapping;
-import de.jetsli.lumeo.util.TermFilter;
 import com.tinkerpop.blueprints.pgm.CloseableSequence;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.queries.BooleanFilter;
-import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.Weight;
 
 /**
+ * Iterates over all matching documents in docID order segment by segment. The hits are not scored
+ * and not sorted, so a complete scan is one linear pass. The docIDs are collected in a buffer of n
+ * entries which is filled again when drained.
+ *
+ * Structural restrictions (type, vertices, labels, non text properties) are filters and their
+ * DocIdSets are intersected directly. Only a full text value needs a query and only setRanked
+ * calculates scores.
  *
  * @author Peter Karich, info@jetsli.de
  */
@@ -38,21 +63,38 @@ public abstract class LuceneFilterSequence<T> implements CloseableSequence<T> {
     protected LuceneGraph g;
     private Filter baseFilter;
     private Filter filter;
-    private int n = 10;
-    private int index = 0;
+    private Filter valueFilter;
+    private int n = 100;
+    private int topN = -1;
+    private Sort sort;
     private Mapping mapping;
-    private TopDocs docs;
     private IndexSearcher searcher;
+    // null if only filters are used
     private Query query;
     private boolean closed = false;
     private Document doc;
+    private boolean initialized = false;
+    // combination of all filters
+    private Filter combinedFilter;
+    private Weight weight;
+    private AtomicReaderContext[] leaves;
+    private int leafIndex = -1;
+    private DocIdSetIterator leafDocs;
+    private int[] buffer;
+    private int bufferSize;
+    private int bufferIndex;
+    private AtomicReader bufferReader;
+    private ScoreDoc[] rankedDocs;
+    // null loads all stored fields
+    private Set<String> fields;
+    private int partitionSize = 1 << 16;
 
     public LuceneFilterSequence(LuceneGraph g, Class<T> type) {
         this.g = g;
-        query = new MatchAllDocsQuery();
         searcher = g.getRaw().newUnmanagedSearcher();
         mapping = g.getMapping(type);
-        baseFilter = new TermFilter(RawLucene.TYPE, mapping.toBytes(RawLucene.TYPE, type.getSimpleName()));
+        // cached per segment and shared by all sequences of the type
+        baseFilter = g.getRaw().getTypeFilter(type.getSimpleName());
     }
 
     public Filter getBaseFilter() {
@@ -61,13 +103,67 @@ public abstract class LuceneFilterSequence<T> implements CloseableSequence<T> {
 
     protected abstract T createElement(Document doc);
 
-    public LuceneFilterSequence<T> setN(int hitsPerPage) {
-        n = hitsPerPage;
+    /**
+     * @param bufferSize the number of docIDs fetched at once
+     */
+    public LuceneFilterSequence<T> setN(int bufferSize) {
+        n = bufferSize;
+        return this;
+    }
+
+    /**
+     * Loads only the specified stored fields of the hits, e.g. RawLucene.HEADER_FIELDS if only the
+     * ids, labels or vertices are needed. The elements load their remaining fields on demand.
+     */
+    public LuceneFilterSequence<T> setFields(Set<String> fields) {
+        this.fields = fields;
+        return this;
+    }
+
+    protected boolean isPartial() {
+        return fields != null;
+    }
+
+    protected IndexSearcher getSearcher() {
+        return searcher;
+    }
+
+    /**
+     * @return true if a filter, value, range or ranking restricts the hits of the base filter
+     */
+    protected boolean isRestricted() {
+        return filter != null || valueFilter != null || query != null || topN >= 0;
+    }
+
+    /**
+     * @param partitionSize the maximum number of docIDs scanned by one task of forEachParallel
+     */
+    public LuceneFilterSequence<T> setPartitionSize(int partitionSize) {
+        if (partitionSize < 1)
+            throw new IllegalArgumentException("Partition size must be positive:" + partitionSize);
+        this.partitionSize = partitionSize;
         return this;
     }
 
     public LuceneFilterSequence<T> setValue(String field, Object o) {
-        query = mapping.getQuery(field, o);
+        if (mapping.isFullText(field)) {
+            query = mapping.getQuery(field, o);
+            valueFilter = null;
+        } else {
+            query = null;
+            // shared with all lookups of the same value
+            valueFilter = g.getRaw().getTermFilter(field, mapping.toBytes(field, o));
+        }
+        return this;
+    }
+
+    /**
+     * Restricts the hits to the values of the field between from and to (both inclusive) instead
+     * of a single value. Use null for an open bound. See Mapping.getRangeFilter
+     */
+    public LuceneFilterSequence<T> setRange(String field, Object from, Object to) {
+        query = null;
+        valueFilter = mapping.getRangeFilter(field, from, to);
         return this;
     }
 
@@ -76,39 +172,287 @@ public abstract class LuceneFilterSequence<T> implements CloseableSequence<T> {
         return this;
     }
 
+    /**
+     * Iterates only over the best topN hits in the order of their score instead of all hits in
+     * docID order. Only useful with a full text value.
+     */
+    public LuceneFilterSequence<T> setRanked(int topN) {
+        this.topN = topN;
+        sort = null;
+        return this;
+    }
+
+    /**
+     * Iterates only over the first topN hits sorted by the values of the field. See
+     * Mapping.getSortField
+     */
+    public LuceneFilterSequence<T> setSorted(String field, boolean reverse, int topN) {
+        this.topN = topN;
+        sort = new Sort(mapping.getSortField(field, reverse));
+        return this;
+    }
+
+    private void init() throws IOException {
+        // intersects the DocIdSets of the filters without a result bitset
+        AndFilter and = null;
+        for (Filter f : new Filter[]{getBaseFilter(), filter, valueFilter}) {
+            if (f == null)
+                continue;
+            if (and == null)
+                and = new AndFilter();
+            and.add(f);
+        }
+        combinedFilter = and;
+
+        if (topN >= 0) {
+            Query q = query == null ? new MatchAllDocsQuery() : query;
+            if (sort == null)
+                rankedDocs = searcher.search(q, combinedFilter, Math.max(1, topN)).scoreDocs;
+            else
+                rankedDocs = searcher.search(q, combinedFilter, Math.max(1, topN), sort).scoreDocs;
+        } else if (query != null || combinedFilter == null) {
+            Query q = query == null ? new MatchAllDocsQuery() : query;
+            if (combinedFilter != null)
+                q = new FilteredQuery(q, combinedFilter);
+            weight = searcher.createNormalizedWeight(q);
+        }
+        leaves = searcher.getTopReaderContext().leaves();
+        buffer = new int[Math.max(1, n)];
+        initialized = true;
+    }
+
     @Override public boolean hasNext() {
-        if (docs == null) {
+        if (rankedDocs != null)
+            return bufferIndex < rankedDocs.length;
+        if (bufferIndex < bufferSize)
+            return true;
+
+        try {
+            if (!initialized) {
+                init();
+                if (rankedDocs != null)
+                    return hasNext();
+            }
+            fillBuffer();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return bufferIndex < bufferSize;
+    }
+
+    /**
+     * Collects the next docIDs of the current segment or moves to the next segment with hits
+     */
+    private void fillBuffer() throws IOException {
+        bufferIndex = 0;
+        bufferSize = 0;
+        while (true) {
+            if (leafDocs == null) {
+                if (++leafIndex >= leaves.length)
+                    return;
+
+                AtomicReaderContext ctx = leaves[leafIndex];
+                leafDocs = iterator(ctx, null);
+                if (leafDocs == null)
+                    continue;
+                bufferReader = ctx.reader();
+            }
+
+            while (bufferSize < buffer.length) {
+                int docID = leafDocs.nextDoc();
+                if (docID == DocIdSetIterator.NO_MORE_DOCS) {
+                    leafDocs = null;
+                    break;
+                }
+                buffer[bufferSize++] = docID;
+            }
+            if (bufferSize > 0)
+                return;
+        }
+    }
+
+    /**
+     * @param set the DocIdSet of the combined filter for the segment or null to create it
+     * @return the hits of the segment or null if there are none
+     */
+    private DocIdSetIterator iterator(AtomicReaderContext ctx, DocIdSet set) throws IOException {
+        if (weight != null)
+            // in order, no top scorer => no scores are calculated
+            return weight.scorer(ctx, true, false, ctx.reader().getLiveDocs());
+
+        if (set == null)
+            set = combinedFilter.getDocIdSet(ctx, ctx.reader().getLiveDocs());
+        return set == null ? null : set.iterator();
+    }
+
+    private Document loadDocument(IndexReader reader, int docID) throws IOException {
+        if (fields == null)
+            return reader.document(docID);
+
+        DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(fields);
+        reader.document(docID, visitor);
+        return visitor.getDocument();
+    }
+
+    /**
+     * Calls the visitor for every hit with a temporary pool of the specified number of threads.
+     *
+     * @see #forEachParallel(ExecutorService, AnyExecutor)
+     */
+    public void forEachParallel(int threads, AnyExecutor<?, T> visitor) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            forEachParallel(executor, visitor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Calls the visitor for every hit, e.g. for aggregations or reindexing of the whole graph.
+     * The segments are split into docID ranges of at most partitionSize docs and every range is
+     * scanned by its own task of the executor. So the visitor is called concurrently and in no
+     * specific order. The first exception of the visitor is rethrown after all tasks finished.
+     * Closes this sequence.
+     */
+    public void forEachParallel(ExecutorService executor, final AnyExecutor<?, T> visitor) {
+        if (topN >= 0)
+            throw new UnsupportedOperationException("A ranked sequence cannot be scanned in parallel");
+
+        try {
+            if (!initialized)
+                init();
+
+            List<ScanTask> tasks = new ArrayList<ScanTask>();
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final AtomicReaderContext ctx : leaves) {
+                final int maxDoc = ctx.reader().maxDoc();
+                // compute the filter only once if the segment is split
+                final DocIdSet set = weight == null && maxDoc > partitionSize
+                        ? combinedFilter.getDocIdSet(ctx, ctx.reader().getLiveDocs()) : null;
+                int start = 0;
+                while (start < maxDoc) {
+                    int to = (int) Math.min(maxDoc, (long) start + partitionSize);
+                    ScanTask task = new ScanTask(ctx, set, start, to, visitor);
+                    tasks.add(task);
+                    futures.add(executor.submit(task));
+                    start = to;
+                }
+            }
+
+            Throwable error = null;
             try {
-                if (filter == null)
-                    filter = getBaseFilter();
-                else {
-                    if (getBaseFilter() != null) {
-                        BooleanFilter newFilter = new BooleanFilter();
-                        newFilter.add(getBaseFilter(), Occur.MUST);
-                        newFilter.add(filter, Occur.MUST);
-                        filter = newFilter;
+                for (Future<?> f : futures) {
+                    try {
+                        f.get();
+                    } catch (ExecutionException ex) {
+                        if (error == null)
+                            error = ex.getCause();
                     }
                 }
-
-                docs = searcher.search(query, filter, n);
-            } catch (IOException ex) {
+            } catch (InterruptedException ex) {
+                // the searcher must not be released while a task still reads from it
+                for (int i = 0; i < tasks.size(); i++) {
+                    tasks.get(i).skip();
+                    futures.get(i).cancel(false);
+                }
+                for (ScanTask task : tasks) {
+                    task.awaitUninterruptibly();
+                }
+                Thread.currentThread().interrupt();
                 throw new RuntimeException(ex);
             }
+            if (error instanceof RuntimeException)
+                throw (RuntimeException) error;
+            else if (error != null)
+                throw new RuntimeException(error);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            close();
         }
-        return index < docs.scoreDocs.length;
     }
 
-    @Override public T next() {
-        try {
-            if (!hasNext())
-                throw new UnsupportedOperationException("no further element");
+    /**
+     * Scans one docID range. It is either run or skipped exactly once, so after awaiting all tasks
+     * none of them reads from the searcher.
+     */
+    private class ScanTask implements Callable<Object> {
+
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicReaderContext ctx;
+        private final DocIdSet set;
+        private final int from;
+        private final int to;
+        private final AnyExecutor<?, T> visitor;
 
-            if (index >= docs.scoreDocs.length)
-                docs = searcher.searchAfter(docs.scoreDocs[n - 1], query, filter, n);
+        ScanTask(AtomicReaderContext ctx, DocIdSet set, int from, int to, AnyExecutor<?, T> visitor) {
+            this.ctx = ctx;
+            this.set = set;
+            this.from = from;
+            this.to = to;
+            this.visitor = visitor;
+        }
 
-            doc = searcher.doc(docs.scoreDocs[index++].doc);
+        @Override public Object call() throws Exception {
+            if (!claimed.compareAndSet(false, true))
+                return null;
+            try {
+                scan(ctx, set, from, to, visitor);
+                return null;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Prevents the scan if it has not yet started
+         */
+        void skip() {
+            if (claimed.compareAndSet(false, true))
+                done.countDown();
+        }
+
+        void awaitUninterruptibly() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scan(AtomicReaderContext ctx, DocIdSet set, int from, int to, AnyExecutor<?, T> visitor)
+            throws Exception {
+        DocIdSetIterator docs = iterator(ctx, set);
+        if (docs == null)
+            return;
+
+        AtomicReader reader = ctx.reader();
+        // NO_MORE_DOCS is greater than every range end
+        for (int docID = docs.advance(from); docID < to; docID = docs.nextDoc()) {
+            visitor.execute(createElement(loadDocument(reader, docID)));
+        }
+    }
+
+    @Override public T next() {
+        if (!hasNext())
+            throw new UnsupportedOperationException("no further element");
+
+        try {
+            if (rankedDocs != null)
+                doc = loadDocument(searcher.getIndexReader(), rankedDocs[bufferIndex++].doc);
+            else
+                doc = loadDocument(bufferReader, buffer[bufferIndex++]);
             return createElement(doc);
-        } catch (Exception ex) {
+        } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
     }
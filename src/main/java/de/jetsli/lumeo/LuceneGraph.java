@@ -2,6 +2,7 @@ package de.jetsli.lumeo;
 
 import de.jetsli.lumeo.util.Mapping;
 import de.jetsli.lumeo.util.Mapping.Type;
+import de.jetsli.lumeo.util.SearchExecutor;
 import com.tinkerpop.blueprints.pgm.AutomaticIndex;
 import com.tinkerpop.blueprints.pgm.CloseableSequence;
 import com.tinkerpop.blueprints.pgm.Edge;
@@ -12,14 +13,19 @@ import com.tinkerpop.blueprints.pgm.TransactionalGraph;
 import com.tinkerpop.blueprints.pgm.Vertex;
 import com.tinkerpop.blueprints.pgm.impls.Parameter;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.store.RAMDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +58,9 @@ public class LuceneGraph implements TransactionalGraph, IndexableGraph {
     private AtomicLong atomicCounter = new AtomicLong(1);
     private RawLucene rawLucene;
     private Map<Class, LuceneAutomaticIndex<? extends Element>> indices = new ConcurrentHashMap<Class, LuceneAutomaticIndex<? extends Element>>();
+    private volatile GraphSnapshot snapshot;
+    private File snapshotDir;
+    private volatile boolean snapshotTraversal;
 
     public LuceneGraph() {
         this(new RawLucene(new RAMDirectory()).init());
@@ -171,6 +180,42 @@ public class LuceneGraph implements TransactionalGraph, IndexableGraph {
         return new LuceneVertex(this, doc);
     }
 
+    /**
+     * Loads many vertices at once, see RawLucene.findByUserIds
+     *
+     * @return the vertices at the positions of their ids, null if not found
+     */
+    public List<Vertex> getVertices(final Object... ids) {
+        String[] uIds = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            uIds[i] = ids[i].toString();
+        }
+        Document[] docs = rawLucene.findByUserIds(uIds);
+        List<Vertex> vertices = new ArrayList<Vertex>(docs.length);
+        for (Document doc : docs) {
+            vertices.add(doc == null ? null : new LuceneVertex(this, doc));
+        }
+        return vertices;
+    }
+
+    /**
+     * Loads many edges at once, see RawLucene.findByUserIds
+     *
+     * @return the edges at the positions of their ids, null if not found
+     */
+    public List<Edge> getEdges(final Object... ids) {
+        String[] uIds = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            uIds[i] = ids[i].toString();
+        }
+        Document[] docs = rawLucene.findByUserIds(uIds);
+        List<Edge> edges = new ArrayList<Edge>(docs.length);
+        for (Document doc : docs) {
+            edges.add(doc == null ? null : new LuceneEdge(this, doc));
+        }
+        return edges;
+    }
+
     @Override public CloseableSequence<Vertex> getVertices() {
         return new VertexFilterSequence(this);
     }
@@ -193,21 +238,17 @@ public class LuceneGraph implements TransactionalGraph, IndexableGraph {
             }
 
             Document edgeDoc = rawLucene.findByUserId(userId.toString());
-            rawLucene.indexLock();
-            try {
-                if (edgeDoc == null) {
-                    if (id < 0)
-                        id = atomicCounter.incrementAndGet();
-
-                    edgeDoc = rawLucene.createDocument(userId, id, Edge.class);
-                    edgeDoc.add(getMapping(Edge.class.getSimpleName()).createField(RawLucene.EDGE_LABEL, label));
-                }
-
-                rawLucene.initRelation(edgeDoc, ((LuceneElement) outVertex).getRaw(), ((LuceneElement) inVertex).getRaw());
-                rawLucene.fastPut(id, edgeDoc);
-            } finally {
-                rawLucene.indexUnlock();
+            if (edgeDoc == null) {
+                if (id < 0)
+                    id = atomicCounter.incrementAndGet();
+
+                edgeDoc = rawLucene.createDocument(userId, id, Edge.class);
+                edgeDoc.add(getMapping(Edge.class.getSimpleName()).createField(RawLucene.EDGE_LABEL, label));
             }
+
+            // only the new edge document is written, so no lock on its vertices is necessary
+            rawLucene.initRelation(edgeDoc, (Long) outVertex.getId(), (Long) inVertex.getId());
+            rawLucene.fastPut(id, edgeDoc);
             return new LuceneEdge(this, edgeDoc);
         } catch (RuntimeException e) {
             throw e;
@@ -254,6 +295,12 @@ public class LuceneGraph implements TransactionalGraph, IndexableGraph {
     }
 
     @Override public void shutdown() {
+        synchronized (this) {
+            if (snapshot != null) {
+                snapshot.close();
+                snapshot = null;
+            }
+        }
         rawLucene.close();
     }
 
@@ -269,6 +316,125 @@ public class LuceneGraph implements TransactionalGraph, IndexableGraph {
         // TODO flush here or use lock of RawLucene?
     }
 
+    /**
+     * @return a CSR snapshot of the currently searchable graph. It is recreated only if the index
+     * changed since the last call.
+     */
+    public GraphSnapshot getSnapshot() {
+        return rawLucene.searchSomething(new SearchExecutor<GraphSnapshot>() {
+
+            @Override public GraphSnapshot execute(IndexSearcher searcher) throws Exception {
+                return getSnapshot(searcher);
+            }
+        });
+    }
+
+    /**
+     * @return the snapshot of the reader version of the searcher. It is recreated for a newer
+     * searcher, but for an older searcher null is returned.
+     */
+    GraphSnapshot getSnapshot(IndexSearcher searcher) throws IOException {
+        GraphSnapshot s = snapshot;
+        if (s != null && s.isCurrent(searcher))
+            return s;
+
+        synchronized (this) {
+            s = snapshot;
+            if (s != null) {
+                if (s.isCurrent(searcher))
+                    return s;
+                if (s.getVersion() > GraphSnapshot.getVersion(searcher))
+                    return null;
+                // a sequence still iterating the old snapshot keeps its mapping
+                s.close();
+            }
+            File dir = snapshotDir == null ? new File(System.getProperty("java.io.tmpdir")) : snapshotDir;
+            File file = File.createTempFile("csr-" + GraphSnapshot.getVersion(searcher) + "-", ".snapshot", dir);
+            snapshot = s = GraphSnapshot.create(rawLucene, searcher, file);
+            return s;
+        }
+    }
+
+    /**
+     * @return the snapshot for the adjacency of single vertices or null if it is not used
+     * @see #setSnapshotTraversal(boolean)
+     */
+    GraphSnapshot getTraversalSnapshot(IndexSearcher searcher) {
+        if (!snapshotTraversal)
+            return null;
+        try {
+            return getSnapshot(searcher);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return the header fields of the vertex from the traversal snapshot or null if the vertex
+     * has to be loaded from the index
+     */
+    Document findVertexInSnapshot(final long id) {
+        if (!snapshotTraversal)
+            return null;
+        return rawLucene.searchSomething(new SearchExecutor<Document>() {
+
+            @Override public Document execute(IndexSearcher searcher) throws Exception {
+                GraphSnapshot s = getTraversalSnapshot(searcher);
+                if (s == null)
+                    return null;
+                int index = s.indexOf(id);
+                return index < 0 ? null : s.createVertexDocument(index);
+            }
+        });
+    }
+
+    /**
+     * If enabled the edges of a vertex (without further restrictions) and the vertices of an
+     * edge are read from the snapshot instead of searching and loading documents. The snapshot is
+     * recreated for every new reader version, so this is meant for read-mostly phases: while the
+     * graph is modified every reopen costs a complete rebuild.
+     */
+    public LuceneGraph setSnapshotTraversal(boolean enabled) {
+        snapshotTraversal = enabled;
+        return this;
+    }
+
+    /**
+     * @param dir the directory of the memory mapped snapshot files. If null the temporary
+     * directory is used.
+     */
+    public synchronized LuceneGraph setSnapshotDir(File dir) {
+        snapshotDir = dir;
+        return this;
+    }
+
+    /**
+     * Starts a traversal from the vertices with the specified (internal) ids
+     */
+    public Traversal traverse(long... startIds) {
+        return new Traversal(this, startIds);
+    }
+
+    public PathFinder newPathFinder() {
+        return new PathFinder(this);
+    }
+
+    /**
+     * @return the (internal) vertex ids of a shortest path over the outgoing edges with one of
+     * the labels (or any edge) or null if there is no path within maxDepth edges
+     */
+    public long[] shortestPath(long fromId, long toId, int maxDepth, String... labels) {
+        return newPathFinder().setMaxDepth(maxDepth).setLabels(labels).shortestPath(fromId, toId);
+    }
+
+    /**
+     * @return the ids of the vertices reachable within maxDepth outgoing edges in breadth first
+     * order
+     */
+    public long[] bfs(long startId, int maxDepth, String... labels) {
+        return newPathFinder().setMaxDepth(maxDepth).setLabels(labels).bfs(startId);
+    }
+
     public RawLucene getRaw() {
         return rawLucene;
     }
@@ -277,6 +443,24 @@ public class LuceneGraph implements TransactionalGraph, IndexableGraph {
         return rawLucene.toString();
     }
 
+    /**
+     * Sets the property of many vertices at once: they are loaded with one searcher and written
+     * with one acquisition of the index lock. Vertices which do not exist are skipped.
+     *
+     * @param values the property values at the positions of the vertex ids
+     */
+    public void setVertexProperty(String key, long[] ids, Object[] values) {
+        Document[] docs = rawLucene.findByIds(ids);
+        for (int i = 0; i < docs.length; i++) {
+            if (docs[i] == null)
+                continue;
+            LuceneVertex v = new LuceneVertex(this, docs[i]);
+            v.getSource().put(key, values[i]);
+            docs[i] = v.createIndexDocument();
+        }
+        rawLucene.fastPut(ids, docs);
+    }
+
     public long count(Class cl, String fieldName, Object value) {
         return rawLucene.count(cl, fieldName, value);
     }
@@ -285,6 +469,10 @@ public class LuceneGraph implements TransactionalGraph, IndexableGraph {
         rawLucene.refresh();
     }
 
+    long nextId() {
+        return atomicCounter.incrementAndGet();
+    }
+
     Mapping getMapping(String type) {
         return rawLucene.getMapping(type);
     }
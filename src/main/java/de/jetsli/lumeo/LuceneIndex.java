@@ -6,7 +6,6 @@ import com.tinkerpop.blueprints.pgm.Element;
 import com.tinkerpop.blueprints.pgm.Index;
 import com.tinkerpop.blueprints.pgm.Vertex;
 import com.tinkerpop.blueprints.pgm.impls.StringFactory;
-import org.apache.lucene.index.IndexableField;
 
 /**
  * @author Peter Karich, info@jetsli.de
@@ -54,6 +53,19 @@ public class LuceneIndex<T extends Element> implements Index<T> {
             throw new RuntimeException(UNSUPP_TYPE + ":" + indexClass.getSimpleName());
     }
 
+    /**
+     * @return all elements with a value of key between from and to (both inclusive). A bound can
+     * be null for an open range.
+     */
+    public CloseableSequence<T> range(final String key, final Object from, final Object to) {
+        if (Vertex.class.isAssignableFrom(indexClass)) {
+            return (CloseableSequence<T>) new VertexFilterSequence(g).setRange(key, from, to);
+        } else if (Edge.class.isAssignableFrom(indexClass)) {
+            return (CloseableSequence<T>) new EdgeFilterSequence(g).setRange(key, from, to);
+        } else
+            throw new RuntimeException(UNSUPP_TYPE + ":" + indexClass.getSimpleName());
+    }
+
     @Override public long count(final String key, final Object value) {
         return g.count(getIndexClass(), key, value);
     }
@@ -66,14 +78,6 @@ public class LuceneIndex<T extends Element> implements Index<T> {
         element.setProperty(key, value);
     }
 
-    protected void removeField(String key, T element) {
-        ((LuceneElement) element).getRaw().removeField(key);
-    }
-
-    protected void putField(IndexableField field, T element) {
-        ((LuceneElement) element).getRaw().add(field);
-    }
-
     @Override public String toString() {
         return StringFactory.indexString(this);
     }
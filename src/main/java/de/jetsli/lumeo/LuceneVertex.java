@@ -23,6 +23,22 @@ public class LuceneVertex extends LuceneElement implements Vertex {
         return new EdgeVertexBoundSequence(g, this, RawLucene.EDGE_OUT).setLabels(labels);        
     }
 
+    /**
+     * @return the number of outgoing edges with one of the specified labels (or all if none)
+     * without loading them
+     */
+    public long getOutDegree(final String... labels) {
+        return g.getRaw().getDegree((Long) getId(), RawLucene.VERTEX_OUT, labels);
+    }
+
+    /**
+     * @return the number of incoming edges with one of the specified labels (or all if none)
+     * without loading them
+     */
+    public long getInDegree(final String... labels) {
+        return g.getRaw().getDegree((Long) getId(), RawLucene.VERTEX_IN, labels);
+    }
+
     @Override public boolean equals(final Object object) {
         return object instanceof LuceneVertex && super.equals(object);
     }
@@ -0,0 +1,319 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo;
+
+import de.jetsli.lumeo.util.LongIntMap;
+import de.jetsli.lumeo.util.LongTermsFilter;
+import de.jetsli.lumeo.util.SearchExecutor;
+import java.util.Arrays;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Breadth first search and shortest path over the outgoing edges, e.g.
+ * g.newPathFinder().setLabels("knows").setMaxDepth(4).shortestPath(fromId, toId)
+ *
+ * Works on internal ids only: like the Traversal every level is one filter over the edges of the
+ * whole frontier and the neighbor ids are read from the field cache. Visited vertices are kept in
+ * primitive hash maps. The number of expanded vertices and the time of every level are available
+ * after a search. Only searchable edges are followed.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class PathFinder {
+
+    private final LuceneGraph g;
+    private String[] labels = new String[0];
+    private int maxDepth = Integer.MAX_VALUE;
+    private Stats stats = new Stats();
+
+    PathFinder(LuceneGraph g) {
+        this.g = g;
+    }
+
+    /**
+     * Follows only the edges with one of the specified labels
+     */
+    public PathFinder setLabels(String... labels) {
+        this.labels = labels == null ? new String[0] : labels;
+        return this;
+    }
+
+    /**
+     * @param maxDepth the maximum number of edges of a path
+     */
+    public PathFinder setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * @return the ids of all vertices reachable from the start vertex within maxDepth edges in
+     * breadth first order, starting with the start vertex itself
+     */
+    public long[] bfs(final long start) {
+        return g.getRaw().searchSomething(new SearchExecutor<long[]>() {
+
+            @Override public long[] execute(IndexSearcher searcher) throws Exception {
+                stats = new Stats();
+                Expander expander = new Expander(searcher);
+                Tree tree = new Tree(RawLucene.VERTEX_OUT, RawLucene.VERTEX_IN, start);
+                for (int depth = 0; depth < maxDepth && tree.frontierSize() > 0; depth++) {
+                    tree.expand(expander, null);
+                }
+                return Arrays.copyOf(tree.ids, tree.size);
+            }
+        });
+    }
+
+    /**
+     * Searches from both ends: the smaller frontier gets expanded over the outgoing edges of the
+     * start or the incoming edges of the target side.
+     *
+     * @return the vertex ids of a shortest path including from and to or null if there is no
+     * path within maxDepth edges
+     */
+    public long[] shortestPath(final long from, final long to) {
+        return g.getRaw().searchSomething(new SearchExecutor<long[]>() {
+
+            @Override public long[] execute(IndexSearcher searcher) throws Exception {
+                stats = new Stats();
+                if (from == to)
+                    return new long[]{from};
+
+                Expander expander = new Expander(searcher);
+                Tree forward = new Tree(RawLucene.VERTEX_OUT, RawLucene.VERTEX_IN, from);
+                Tree backward = new Tree(RawLucene.VERTEX_IN, RawLucene.VERTEX_OUT, to);
+                for (int depth = 0; depth < maxDepth; depth++) {
+                    if (forward.frontierSize() == 0 || backward.frontierSize() == 0)
+                        return null;
+
+                    boolean fw = forward.frontierSize() <= backward.frontierSize();
+                    Tree tree = fw ? forward : backward;
+                    Tree other = fw ? backward : forward;
+                    // the best meeting of the first level where both trees meet is a shortest path
+                    int meeting = tree.expand(expander, other);
+                    if (meeting >= 0) {
+                        long id = tree.ids[meeting];
+                        long[] path1 = forward.pathTo(forward.visited.get(id));
+                        long[] path2 = backward.pathTo(backward.visited.get(id));
+                        long[] path = new long[path1.length + path2.length - 1];
+                        for (int i = 0; i < path1.length; i++) {
+                            path[i] = path1[path1.length - 1 - i];
+                        }
+                        System.arraycopy(path2, 1, path, path1.length, path2.length - 1);
+                        return path;
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return the statistics of the last search
+     */
+    public Stats getStats() {
+        return stats;
+    }
+
+    /**
+     * Reads the edges of a frontier from one searcher
+     */
+    private class Expander {
+
+        final AtomicReaderContext[] arc;
+        final Filter labelFilter;
+
+        Expander(IndexSearcher searcher) {
+            arc = searcher.getTopReaderContext().leaves();
+            labelFilter = labels.length == 0 ? null : g.getRaw().getEdgeLabels().newFilter(labels);
+        }
+
+        /**
+         * Calls tree.reached for every edge from a vertex of the frontier
+         */
+        void expand(Tree tree, long[] frontier) throws Exception {
+            LongTermsFilter edgeFilter = new LongTermsFilter(tree.from, frontier);
+            for (int i = 0; i < arc.length; i++) {
+                AtomicReader reader = arc[i].reader();
+                DocIdSet edgeSet = edgeFilter.getDocIdSet(arc[i], reader.getLiveDocs());
+                if (edgeSet == null)
+                    continue;
+                DocIdSetIterator edges = edgeSet.iterator();
+                if (edges == null)
+                    continue;
+
+                Bits labelBits = null;
+                if (labelFilter != null) {
+                    DocIdSet set = labelFilter.getDocIdSet(arc[i], null);
+                    if (set == null)
+                        continue;
+                    labelBits = set.bits();
+                }
+
+                long[] sources = FieldCache.DEFAULT.getLongs(reader, tree.from, FieldCache.NUMERIC_UTILS_LONG_PARSER, false);
+                long[] targets = FieldCache.DEFAULT.getLongs(reader, tree.to, FieldCache.NUMERIC_UTILS_LONG_PARSER, false);
+                int doc;
+                while ((doc = edges.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    if (labelBits == null || labelBits.get(doc))
+                        tree.reached(sources[doc], targets[doc]);
+                }
+            }
+        }
+    }
+
+    /**
+     * The vertices visited from one end. The node at index i has the id ids[i] and the parent node
+     * parents[i]; visited maps an id to its node index.
+     */
+    private class Tree {
+
+        final String from;
+        final String to;
+        final LongIntMap visited = new LongIntMap();
+        long[] ids = new long[16];
+        int[] parents = new int[16];
+        int[] depths = new int[16];
+        int size;
+        // the nodes of the frontier are [frontierStart, size)
+        int frontierStart;
+        // set while expanding
+        Tree other;
+        int meeting;
+        int meetingLength;
+
+        Tree(String from, String to, long start) {
+            this.from = from;
+            this.to = to;
+            add(start, -1, 0);
+        }
+
+        int frontierSize() {
+            return size - frontierStart;
+        }
+
+        private int add(long id, int parent, int depth) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                parents = Arrays.copyOf(parents, size * 2);
+                depths = Arrays.copyOf(depths, size * 2);
+            }
+            ids[size] = id;
+            parents[size] = parent;
+            depths[size] = depth;
+            visited.put(id, size);
+            return size++;
+        }
+
+        /**
+         * Expands the frontier by one level.
+         *
+         * @return the node index of the best meeting with the other tree or -1
+         */
+        int expand(Expander expander, Tree other) throws Exception {
+            long start = System.nanoTime();
+            this.other = other;
+            meeting = -1;
+            meetingLength = Integer.MAX_VALUE;
+            int end = size;
+            long[] frontier = Arrays.copyOfRange(ids, frontierStart, end);
+            expander.expand(this, frontier);
+            frontierStart = end;
+            stats.add(frontier.length, System.nanoTime() - start);
+            return meeting;
+        }
+
+        void reached(long source, long target) {
+            if (visited.get(target) != LongIntMap.NOT_FOUND)
+                return;
+
+            int parent = visited.get(source);
+            int node = add(target, parent, depths[parent] + 1);
+            if (other == null)
+                return;
+
+            int otherNode = other.visited.get(target);
+            if (otherNode != LongIntMap.NOT_FOUND && depths[node] + other.depths[otherNode] < meetingLength) {
+                meeting = node;
+                meetingLength = depths[node] + other.depths[otherNode];
+            }
+        }
+
+        /**
+         * @return the ids from the specified node back to the start
+         */
+        long[] pathTo(int node) {
+            long[] path = new long[depths[node] + 1];
+            for (int i = 0; node >= 0; i++, node = parents[node]) {
+                path[i] = ids[node];
+            }
+            return path;
+        }
+    }
+
+    /**
+     * The expanded vertices and the time in nanoseconds per level
+     */
+    public static class Stats {
+
+        private int[] expanded = new int[0];
+        private long[] nanos = new long[0];
+
+        void add(int expandedVertices, long time) {
+            expanded = Arrays.copyOf(expanded, expanded.length + 1);
+            expanded[expanded.length - 1] = expandedVertices;
+            nanos = Arrays.copyOf(nanos, nanos.length + 1);
+            nanos[nanos.length - 1] = time;
+        }
+
+        public int getLevels() {
+            return expanded.length;
+        }
+
+        public int getExpanded(int level) {
+            return expanded[level];
+        }
+
+        public long getNanos(int level) {
+            return nanos[level];
+        }
+
+        public long getTotalExpanded() {
+            long sum = 0;
+            for (int e : expanded) {
+                sum += e;
+            }
+            return sum;
+        }
+
+        @Override public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < expanded.length; i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(i).append(":").append(expanded[i]).append(" in ").append(nanos[i] / 1000).append("us");
+            }
+            return sb.toString();
+        }
+    }
+}
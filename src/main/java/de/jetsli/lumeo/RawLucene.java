@@ -16,15 +16,22 @@ package de.jetsli.lumeo;
  */
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DirectoryReader;
@@ -34,6 +41,9 @@ import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.LogByteSizeMergePolicy;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.NRTManager;
 import org.apache.lucene.search.NRTManager.TrackingIndexWriter;
@@ -41,18 +51,26 @@ import org.apache.lucene.search.NRTManagerReopenThread;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import de.jetsli.lumeo.util.IndexOp;
+import de.jetsli.lumeo.util.DocumentCache;
+import de.jetsli.lumeo.util.LabelDictionary;
+import de.jetsli.lumeo.util.LRUCache;
 import de.jetsli.lumeo.util.LuceneHelper;
 import de.jetsli.lumeo.util.Mapping;
+import de.jetsli.lumeo.util.RealtimeCache;
 import de.jetsli.lumeo.util.SearchExecutor;
+import de.jetsli.lumeo.util.SegmentIdResolver;
+import de.jetsli.lumeo.util.Source;
+import de.jetsli.lumeo.util.TermFilter;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.index.*;
 
@@ -76,11 +94,18 @@ public class RawLucene {
     public static final String UID = "_uid";
     // of type String
     public static final String TYPE = "_type";
+    // edge directions, no longer stored in vertex documents
     public static final String EDGE_OUT = "_eout";
     public static final String EDGE_IN = "_ein";
     public static final String EDGE_LABEL = "_elabel";
     public static final String VERTEX_OUT = "_vout";
     public static final String VERTEX_IN = "_vin";
+    // all properties of an element in one binary stored field
+    public static final String SOURCE = "_source";
+    // the fields to identify an element and to walk the graph: all except the source and the
+    // edge fields of older vertex documents
+    public static final Set<String> HEADER_FIELDS = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList(ID, UID, TYPE, EDGE_LABEL, VERTEX_OUT, VERTEX_IN)));
     public static final Version VERSION = Version.LUCENE_40;
     private TrackingIndexWriter writer;
     private Directory dir;
@@ -92,18 +117,30 @@ public class RawLucene {
     private long successfulLuceneReads = 0;
     private double ramBufferSizeMB = 128;
     private int termIndexIntervalSize = 512;
+    // write lock for init and close, read lock for every write to the index writer
     private final ReadWriteLock indexRWLock = new ReentrantReadWriteLock();
-    // id -> indexOp (create, update, delete)    
-    // we could group indexop and same type (same analyzer) to make indexing faster    
-    private final Map<Long, Map<Long, IndexOp>> realTimeCache = new ConcurrentHashMap<Long, Map<Long, IndexOp>>();
+    // id -> latest written document (or DELETED) until the searcher sees it
+    private final RealtimeCache realTimeCache = new RealtimeCache();
+    // id -> docID per segment, avoids a term lookup for every findById
+    private final SegmentIdResolver idResolver = new SegmentIdResolver(ID);
+    private final LabelDictionary edgeLabels = new LabelDictionary(EDGE_LABEL);
+    // type -> filter with the per segment DocIdSets of all elements of the type, never evicted
+    private final Map<String, Filter> typeFilters = new ConcurrentHashMap<String, Filter>();
+    // term -> filter which caches its DocIdSet per segment core. Volatile as setFilterCacheSize
+    // replaces it while searches could read it
+    private volatile LRUCache<Term, Filter> filterCache = new LRUCache<Term, Filter>(100);
+    // loaded documents, invalidated on every write
+    private DocumentCache docCache;
+    private LRUCache<String, Long> uidCache;
+    private int cacheSize = 100000;
+    private int cacheMB = 64;
     private Logger logger = LoggerFactory.getLogger(getClass());
     private Map<String, Mapping> mappings = new ConcurrentHashMap<String, Mapping>(2);
     private Mapping defaultMapping = new Mapping("_default");
     private String name;
     private boolean closed = false;
-    private FlushThread flushThread;
     private NRTManagerReopenThread reopenThread;
-    private volatile long latestGen = -1;
+    private final AtomicLong latestGen = new AtomicLong(-1);
     // If there are waiting searchers how long should reopen takes?
     double incomingSearchesMaximumWaiting = 0.03;
     // If there are no waiting searchers reopen it less frequent.
@@ -169,14 +206,18 @@ public class RawLucene {
 //                //TODO do some kind of warming here?
 //                return new IndexSearcher(reader);
 //              }              
-            });
+            }) {
 
-            getCurrentRTCache(latestGen);
+                @Override protected void afterRefresh() {
+                    super.afterRefresh();
+                    // the new searcher sees these writes => no need to buffer them any longer
+                    realTimeCache.evict(getCurrentSearchingGen());
+                }
+            };
+
+            docCache = new DocumentCache(cacheSize, cacheMB * 1024L * 1024);
+            uidCache = new LRUCache<String, Long>(cacheSize);
             int priority = Math.min(Thread.currentThread().getPriority() + 2, Thread.MAX_PRIORITY);
-            flushThread = new FlushThread("flush-thread");
-            flushThread.setPriority(priority);
-            flushThread.setDaemon(true);
-            flushThread.start();
 
             reopenThread = new NRTManagerReopenThread(nrtManager, ordinaryWaiting, incomingSearchesMaximumWaiting);
             reopenThread.setName("NRT Reopen Thread");
@@ -192,32 +233,84 @@ public class RawLucene {
     }
 
     long getId(Document doc) {
-        return ((LongField) doc.getField(ID)).numericValue().longValue();
+        // loaded documents do not contain a LongField
+        return doc.getField(ID).numericValue().longValue();
     }
 
     public Document findById(final long id) {
+        // fetch the stamp before the realtime cache so that a concurrent write is detected
+        long stamp = docCache.getStamp(id);
         //Check cache
-        IndexOp result = getCurrentRTCache(latestGen).get(id);
-        if (result != null) {
-            if (result.type == IndexOp.Type.DELETE)
-                return null;
-            return result.document;
-        }
+        Document result = realTimeCache.get(id);
+        if (result != null)
+            return result == RealtimeCache.DELETED ? null : result;
 
-        return searchSomething(new SearchExecutor<Document>() {
+        Document doc = docCache.get(id);
+        if (doc != null)
+            return doc;
+
+        doc = searchSomething(new SearchExecutor<Document>() {
 
             @Override public Document execute(IndexSearcher searcher) throws Exception {
-                // TODO optimize via indexReader.termDocsEnum !?
                 IndexReaderContext trc = searcher.getTopReaderContext();
                 AtomicReaderContext[] arc = trc.leaves();
                 for (int i = 0; i < arc.length; i++) {
                     AtomicReader subreader = arc[i].reader();
-                    DocsEnum docs = subreader.terms(UID).iterator(null).docs(subreader.getLiveDocs(), null, false);
-                    if (docs != null) {
-                        int docID = docs.nextDoc();
-                        if (docID != DocsEnum.NO_MORE_DOCS) {
-                            return subreader.document(docID);
-                        }
+                    int docID = idResolver.getDocId(subreader, id);
+                    if (docID >= 0)
+                        return subreader.document(docID);
+                }
+                return null;
+            }
+        });
+        if (doc != null)
+            docCache.putIfUnchanged(id, doc, stamp);
+        return doc;
+    }
+
+    /**
+     * Loads only the specified stored fields of the document, e.g. HEADER_FIELDS to get from an
+     * edge to its vertex without decoding the properties of the vertex. A document from the
+     * realtime cache or the document cache is already decoded and returned completely. Partially
+     * loaded documents are not cached.
+     */
+    public Document findById(final long id, final Set<String> fields) {
+        if (fields == null)
+            return findById(id);
+
+        Document doc = findCachedById(id);
+        if (doc != null)
+            return doc == RealtimeCache.DELETED ? null : doc;
+
+        return loadById(id, fields);
+    }
+
+    /**
+     * @return the completely loaded document from the realtime cache or the document cache,
+     * RealtimeCache.DELETED for a buffered deletion or null if it has to be loaded from the index
+     */
+    Document findCachedById(long id) {
+        Document result = realTimeCache.get(id);
+        if (result != null)
+            return result;
+        return docCache.get(id);
+    }
+
+    /**
+     * Loads the specified stored fields of the document from the index, bypassing the caches.
+     */
+    Document loadById(final long id, final Set<String> fields) {
+        return searchSomething(new SearchExecutor<Document>() {
+
+            @Override public Document execute(IndexSearcher searcher) throws Exception {
+                AtomicReaderContext[] arc = searcher.getTopReaderContext().leaves();
+                for (int i = 0; i < arc.length; i++) {
+                    AtomicReader subreader = arc[i].reader();
+                    int docID = idResolver.getDocId(subreader, id);
+                    if (docID >= 0) {
+                        DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(fields);
+                        subreader.document(docID, visitor);
+                        return visitor.getDocument();
                     }
                 }
                 return null;
@@ -226,7 +319,16 @@ public class RawLucene {
     }
 
     public Document findByUserId(final String uId) {
-        return searchSomething(new SearchExecutor<Document>() {
+        Long id = uidCache.get(uId);
+        if (id != null) {
+            Document doc = findById(id);
+            // the document could be deleted or changed in the meantime
+            if (doc != null && uId.equals(doc.get(UID)))
+                return doc;
+            uidCache.remove(uId);
+        }
+
+        Document doc = searchSomething(new SearchExecutor<Document>() {
 
             @Override public Document execute(final IndexSearcher searcher) throws IOException {
                 final BytesRef bytes = new BytesRef(uId);
@@ -266,6 +368,145 @@ public class RawLucene {
                 return doc;
             }
         });
+        if (doc != null)
+            uidCache.put(uId, getId(doc));
+        return doc;
+    }
+
+    /**
+     * Loads many documents with one searcher. Cached documents are taken from the realtime and
+     * document cache, the others are loaded segment by segment in docID order.
+     *
+     * @return the documents at the positions of their ids, null if not found or deleted
+     */
+    public Document[] findByIds(final long... ids) {
+        final Document[] result = new Document[ids.length];
+        final long[] stamps = new long[ids.length];
+        int missing = 0;
+        final int[] pending = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            stamps[i] = docCache.getStamp(ids[i]);
+            Document doc = realTimeCache.get(ids[i]);
+            if (doc == null)
+                doc = docCache.get(ids[i]);
+            else if (doc == RealtimeCache.DELETED)
+                continue;
+
+            if (doc == null)
+                pending[missing++] = i;
+            else
+                result[i] = doc;
+        }
+        if (missing == 0)
+            return result;
+
+        final int pendingSize = missing;
+        searchSomething(new SearchExecutor<Object>() {
+
+            @Override public Object execute(IndexSearcher searcher) throws Exception {
+                AtomicReaderContext[] arc = searcher.getTopReaderContext().leaves();
+                // docID in the upper and position in the lower bits => sorting gives docID order
+                long[] hits = new long[pendingSize];
+                for (int i = 0; i < arc.length; i++) {
+                    AtomicReader subreader = arc[i].reader();
+                    int size = 0;
+                    for (int p = 0; p < pendingSize; p++) {
+                        int docID = idResolver.getDocId(subreader, ids[pending[p]]);
+                        if (docID >= 0)
+                            hits[size++] = ((long) docID << 32) | pending[p];
+                    }
+                    Arrays.sort(hits, 0, size);
+                    for (int h = 0; h < size; h++) {
+                        int index = (int) hits[h];
+                        result[index] = subreader.document((int) (hits[h] >>> 32));
+                        docCache.putIfUnchanged(ids[index], result[index], stamps[index]);
+                    }
+                }
+                return null;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Like findByIds but for user ids. The uncached user ids are looked up with one terms enum
+     * per segment.
+     *
+     * @return the documents at the positions of their user ids, null if not found
+     */
+    public Document[] findByUserIds(final String... uIds) {
+        final Document[] result = new Document[uIds.length];
+        long[] ids = new long[uIds.length];
+        int[] positions = new int[uIds.length];
+        int cached = 0;
+        for (int i = 0; i < uIds.length; i++) {
+            Long id = uidCache.get(uIds[i]);
+            if (id != null) {
+                ids[cached] = id;
+                positions[cached++] = i;
+            }
+        }
+        Document[] docs = findByIds(Arrays.copyOf(ids, cached));
+        for (int c = 0; c < cached; c++) {
+            String uId = uIds[positions[c]];
+            // the document could be deleted or changed in the meantime
+            if (docs[c] != null && uId.equals(docs[c].get(UID)))
+                result[positions[c]] = docs[c];
+            else
+                uidCache.remove(uId);
+        }
+
+        final List<Integer> pending = new ArrayList<Integer>();
+        final BytesRef[] terms = new BytesRef[uIds.length];
+        for (int i = 0; i < uIds.length; i++) {
+            if (result[i] == null) {
+                pending.add(i);
+                terms[i] = new BytesRef(uIds[i]);
+            }
+        }
+        if (pending.isEmpty())
+            return result;
+
+        // walk the terms in index order
+        Collections.sort(pending, new Comparator<Integer>() {
+
+            @Override public int compare(Integer o1, Integer o2) {
+                return terms[o1].compareTo(terms[o2]);
+            }
+        });
+        searchSomething(new SearchExecutor<Object>() {
+
+            @Override public Object execute(IndexSearcher searcher) throws Exception {
+                AtomicReaderContext[] arc = searcher.getTopReaderContext().leaves();
+                for (int i = 0; i < arc.length; i++) {
+                    AtomicReader subreader = arc[i].reader();
+                    Terms uidTerms = subreader.terms(UID);
+                    if (uidTerms == null)
+                        continue;
+
+                    TermsEnum te = uidTerms.iterator(null);
+                    DocsEnum docs = null;
+                    for (int index : pending) {
+                        if (!te.seekExact(terms[index], false))
+                            continue;
+
+                        docs = te.docs(subreader.getLiveDocs(), docs, false);
+                        int docID;
+                        while ((docID = docs.nextDoc()) != DocsEnum.NO_MORE_DOCS) {
+                            if (result[index] != null)
+                                throw new IllegalStateException("Document with " + UID + "=" + uIds[index] + " not the only one");
+                            result[index] = subreader.document(docID);
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+        for (int index : pending) {
+            if (result[index] != null)
+                uidCache.put(uIds[index], getId(result[index]));
+        }
+        return result;
     }
 
     public <T> T searchSomething(SearchExecutor<T> exec) {
@@ -283,35 +524,40 @@ public class RawLucene {
         }
     }
 
-    public boolean exists(long id) {
-        return findById(id) != null;
+    public boolean exists(final long id) {
+        Document result = realTimeCache.get(id);
+        if (result != null)
+            return result != RealtimeCache.DELETED;
+
+        // avoid loading the stored fields
+        return searchSomething(new SearchExecutor<Boolean>() {
+
+            @Override public Boolean execute(IndexSearcher searcher) throws Exception {
+                AtomicReaderContext[] arc = searcher.getTopReaderContext().leaves();
+                for (int i = 0; i < arc.length; i++) {
+                    if (idResolver.getDocId(arc[i].reader(), id) >= 0)
+                        return true;
+                }
+                return false;
+            }
+        });
     }
 
     public boolean existsUserId(String uId) {
         return findByUserId(uId) != null;
     }
 
-    // not thread safe => only an estimation
+    /**
+     * @return the number of written documents which are not yet searchable
+     */
     public int calcSize() {
-        // TODO too many entries are reported        
-        int unflushedEntries = 0;
-        for (Entry<Long, Map<Long, IndexOp>> e : realTimeCache.entrySet()) {
-            if (latestGen >= e.getKey())
-                unflushedEntries = e.getValue().size();
-        }
-        return unflushedEntries;
+        return realTimeCache.size();
     }
 
     public void close() {
         indexLock();
         try {
-            flushThread.interrupt();
             reopenThread.close();
-            flushThread.join();
-
-            // force correct count of calcSize
-//            waitUntilSearchable();
-//            cleanUpCache(latestGen + 1, 0);
 
             closed = true;
             nrtManager.close();
@@ -332,6 +578,55 @@ public class RawLucene {
         }
     }
 
+    public static boolean isSystemField(String name) {
+        return ID.equals(name) || UID.equals(name) || TYPE.equals(name) || EDGE_LABEL.equals(name)
+                || VERTEX_OUT.equals(name) || VERTEX_IN.equals(name) || SOURCE.equals(name)
+                || EDGE_OUT.equals(name) || EDGE_IN.equals(name);
+    }
+
+    /**
+     * Creates the document which gets indexed for an element. Properties are taken from the
+     * source only and get indexed if they are mapped. The stored document can be a loaded one
+     * where all system fields are only stored.
+     */
+    public Document createIndexDocument(Document stored, Source source) {
+        String type = stored.get(TYPE);
+        if (type == null)
+            throw new UnsupportedOperationException("Document needs to have a type associated");
+        Mapping m = getMapping(type);
+        Document doc = new Document();
+        for (IndexableField f : stored.getFields()) {
+            String name = f.name();
+            if (ID.equals(name) || VERTEX_OUT.equals(name) || VERTEX_IN.equals(name))
+                doc.add(m.newIdField(name, f.numericValue().longValue()));
+            else if (UID.equals(name))
+                doc.add(m.newUIdField(name, f.stringValue()));
+            else if (TYPE.equals(name) || EDGE_LABEL.equals(name))
+                doc.add(m.createField(name, f.stringValue()));
+        }
+
+        addSource(doc, m, source);
+        return doc;
+    }
+
+    /**
+     * Adds the stored source and the indexed fields of all mapped properties
+     */
+    void addSource(Document doc, Mapping m, Source source) {
+        if (source.isEmpty())
+            return;
+
+        doc.add(new StoredField(SOURCE, source.toBytes()));
+        for (Entry<String, Object> e : source.asMap().entrySet()) {
+            Field f = m.createIndexedField(e.getKey(), e.getValue());
+            if (f != null)
+                doc.add(f);
+            f = m.createDocValuesField(e.getKey(), e.getValue());
+            if (f != null)
+                doc.add(f);
+        }
+    }
+
     public Document createDocument(String uId, long id, Class cl) {
         Document doc = new Document();
         Mapping m = getMapping(cl.getSimpleName());
@@ -350,36 +645,210 @@ public class RawLucene {
         return searchSomething(new SearchExecutor<Long>() {
 
             @Override public Long execute(IndexSearcher searcher) throws Exception {
-                // TODO optimize via indexReader.termDocsEnum !?
-                TopDocs td = searcher.search(new TermQuery(new Term(fieldName, bytes)), 1);
-                return (long) td.totalHits;
+                // no query, no scoring: count the postings of the term per segment
+                long count = 0;
+                AtomicReaderContext[] arc = searcher.getTopReaderContext().leaves();
+                for (int i = 0; i < arc.length; i++) {
+                    AtomicReader subreader = arc[i].reader();
+                    Terms terms = subreader.terms(fieldName);
+                    if (terms == null)
+                        continue;
+
+                    TermsEnum te = terms.iterator(null);
+                    if (!te.seekExact(bytes, false))
+                        continue;
+
+                    Bits liveDocs = subreader.getLiveDocs();
+                    if (liveDocs == null) {
+                        count += te.docFreq();
+                        continue;
+                    }
+
+                    // docFreq includes deleted documents
+                    DocsEnum docs = te.docs(liveDocs, null, false);
+                    while (docs.nextDoc() != DocsEnum.NO_MORE_DOCS) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        });
+    }
+
+    /**
+     * Counts the edges of a vertex without loading them: the postings of the vertex in the
+     * specified field (VERTEX_OUT or VERTEX_IN) are counted per segment, which is only docFreq if
+     * the segment has no deletions and no labels are specified. Only deleted edges and buffered
+     * edges of the vertex are corrected via the realtime cache, again with the postings.
+     */
+    public long getDegree(final long vertexId, final String vertexField, String... labels) {
+        final Filter labelFilter = labels == null || labels.length == 0 ? null : edgeLabels.newFilter(labels);
+        final Set<String> labelSet = labelFilter == null ? null : new HashSet<String>(Arrays.asList(labels));
+        final BytesRef vertexTerm = LuceneHelper.newRefFromLong(vertexId);
+        return searchSomething(new SearchExecutor<Long>() {
+
+            @Override public Long execute(IndexSearcher searcher) throws Exception {
+                // taken after the searcher was acquired: an entry evicted before is searchable
+                final long[] rtIds = realTimeCache.size() == 0 ? new long[0] : realTimeCache.getIds();
+                long count = 0;
+                AtomicReaderContext[] arc = searcher.getTopReaderContext().leaves();
+                // null if the segment has no edge of the vertex
+                TermsEnum[] vertexTerms = new TermsEnum[arc.length];
+                Bits[] labelBits = new Bits[arc.length];
+                for (int i = 0; i < arc.length; i++) {
+                    AtomicReader subreader = arc[i].reader();
+                    Terms terms = subreader.terms(vertexField);
+                    if (terms == null)
+                        continue;
+
+                    TermsEnum te = terms.iterator(null);
+                    if (!te.seekExact(vertexTerm, false))
+                        continue;
+
+                    if (labelFilter != null) {
+                        DocIdSet set = labelFilter.getDocIdSet(arc[i], null);
+                        if (set == null)
+                            continue;
+                        labelBits[i] = set.bits();
+                    }
+                    vertexTerms[i] = te;
+
+                    Bits liveDocs = subreader.getLiveDocs();
+                    if (liveDocs == null && labelFilter == null) {
+                        count += te.docFreq();
+                        continue;
+                    }
+
+                    DocsEnum docs = te.docs(liveDocs, null, false);
+                    int docID;
+                    while ((docID = docs.nextDoc()) != DocsEnum.NO_MORE_DOCS) {
+                        if (labelBits[i] == null || labelBits[i].get(docID))
+                            count++;
+                    }
+                }
+
+                for (long id : rtIds) {
+                    Document doc = realTimeCache.get(id);
+                    if (doc == null)
+                        continue;
+
+                    // the vertices and the label of an edge never change, so any other buffered
+                    // document was not counted and is not counted
+                    boolean buffered = doc != RealtimeCache.DELETED && isEdgeOf(doc, vertexId, vertexField, labelSet);
+                    if (doc != RealtimeCache.DELETED && !buffered)
+                        continue;
+
+                    if (isIndexedEdge(arc, vertexTerms, labelBits, id))
+                        count--;
+                    if (buffered)
+                        count++;
+                }
+                return count;
             }
         });
     }
 
+    /**
+     * @return true if the live document of the id is in the postings of the vertex
+     */
+    private boolean isIndexedEdge(AtomicReaderContext[] arc, TermsEnum[] vertexTerms, Bits[] labelBits,
+            long id) throws IOException {
+        for (int i = 0; i < arc.length; i++) {
+            if (vertexTerms[i] == null)
+                continue;
+
+            AtomicReader subreader = arc[i].reader();
+            int docID = idResolver.getDocId(subreader, id);
+            if (docID < 0)
+                continue;
+
+            DocsEnum docs = vertexTerms[i].docs(null, null, false);
+            return docs.advance(docID) == docID && (labelBits[i] == null || labelBits[i].get(docID));
+        }
+        return false;
+    }
+
+    private static boolean isEdgeOf(Document doc, long vertexId, String vertexField, Set<String> labels) {
+        IndexableField f = doc.getField(vertexField);
+        if (f == null || f.numericValue().longValue() != vertexId)
+            return false;
+        return labels == null || labels.contains(doc.get(EDGE_LABEL));
+    }
+
     long removeById(final long id) {
+        writeLock();
         try {
-            latestGen = writer.deleteDocuments(new Term(ID, LuceneHelper.newRefFromLong(id)));
-            getCurrentRTCache(latestGen).put(id, new IndexOp(IndexOp.Type.DELETE));
-            return latestGen;
+            long gen = writer.deleteDocuments(new Term(ID, LuceneHelper.newRefFromLong(id)));
+            realTimeCache.put(id, RealtimeCache.DELETED, gen);
+            docCache.remove(id);
+            return updateLatestGen(gen);
         } catch (Exception ex) {
             throw new RuntimeException(ex);
+        } finally {
+            writeUnlock();
         }
     }
 
     public long fastPut(long id, Document newDoc) {
+        String type = newDoc.get(TYPE);
+        if (type == null)
+            throw new UnsupportedOperationException("Document needs to have a type associated");
+        Mapping m = getMapping(type);
+        writeLock();
         try {
-            String type = newDoc.get(TYPE);
-            if (type == null)
-                throw new UnsupportedOperationException("Document needs to have a type associated");
-            Mapping m = getMapping(type);
-            latestGen = writer.updateDocument(new Term(ID, LuceneHelper.newRefFromLong(id)),
+            long gen = writer.updateDocument(new Term(ID, LuceneHelper.newRefFromLong(id)),
                     newDoc, m.getCombinedAnalyzer());
-            getCurrentRTCache(latestGen).put(id, new IndexOp(newDoc, IndexOp.Type.UPDATE));
-            return latestGen;
+            realTimeCache.put(id, newDoc, gen);
+            docCache.remove(id);
+            return updateLatestGen(gen);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Writes many documents like fastPut but takes the index lock only once.
+     *
+     * @param docs the documents at the positions of their ids. Null entries are skipped.
+     * @return the generation of the last write
+     */
+    public long fastPut(long[] ids, Document[] docs) {
+        writeLock();
+        try {
+            long gen = -1;
+            for (int i = 0; i < ids.length; i++) {
+                Document doc = docs[i];
+                if (doc == null)
+                    continue;
+                String type = doc.get(TYPE);
+                if (type == null)
+                    throw new UnsupportedOperationException("Document needs to have a type associated");
+                gen = writer.updateDocument(new Term(ID, LuceneHelper.newRefFromLong(ids[i])),
+                        doc, getMapping(type).getCombinedAnalyzer());
+                realTimeCache.put(ids[i], doc, gen);
+                docCache.remove(ids[i]);
+            }
+            return gen < 0 ? latestGen.get() : updateLatestGen(gen);
+        } catch (RuntimeException ex) {
+            throw ex;
         } catch (Exception ex) {
             throw new RuntimeException(ex);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Writers run concurrently, so a lower generation must not overwrite a higher one or flush
+     * would wait for too old writes only.
+     */
+    private long updateLatestGen(long gen) {
+        long cur;
+        while (gen > (cur = latestGen.get()) && !latestGen.compareAndSet(cur, gen)) {
         }
+        return gen;
     }
 
     public long put(String uId, long id, Document newDoc) {
@@ -396,6 +865,20 @@ public class RawLucene {
         return fastPut(id, newDoc);
     }
 
+    /**
+     * Adds the documents of the specified type directly to the index writer: no realtime cache,
+     * no update of existing documents and no tracking for the NRT manager. Call refresh
+     * afterwards to make them searchable.
+     */
+    void bulkAdd(List<Document> docs, String type) throws IOException {
+        writeLock();
+        try {
+            writer.getIndexWriter().addDocuments(docs, getMapping(type).getCombinedAnalyzer());
+        } finally {
+            writeUnlock();
+        }
+    }
+
     void refresh() {
         try {
             // use waitForGeneration instead?
@@ -435,22 +918,30 @@ public class RawLucene {
         indexRWLock.writeLock().unlock();
     }
 
-    @Override public String toString() {
-        return name;
+    /**
+     * Taken by every write to the index writer: writers run in parallel, init and close exclude
+     * them. The writer itself is thread safe.
+     */
+    private void writeLock() {
+        indexRWLock.readLock().lock();
     }
 
-    void initRelation(Document edgeDoc, Document vOut, Document vIn) {
-        long oIndex = getId(vOut);
-        edgeDoc.add(defaultMapping.newIdField(VERTEX_OUT, oIndex));
-        long iIndex = getId(vIn);
-        edgeDoc.add(defaultMapping.newIdField(VERTEX_IN, iIndex));
+    private void writeUnlock() {
+        indexRWLock.readLock().unlock();
+    }
 
-        long eId = getId(edgeDoc);
-        vOut.add(defaultMapping.newIdField(EDGE_OUT, eId));
-        vIn.add(defaultMapping.newIdField(EDGE_IN, eId));
+    @Override public String toString() {
+        return name;
+    }
 
-        fastPut(oIndex, vOut);
-        fastPut(iIndex, vIn);
+    /**
+     * Only the edge document gets the references to its vertices. The postings of _vout and _vin
+     * are the adjacency lists: they are append only per segment and compacted by Lucene's merges.
+     * So adding an edge does not need to reindex the (possibly huge) vertex documents.
+     */
+    void initRelation(Document edgeDoc, long outId, long inId) {
+        edgeDoc.add(defaultMapping.newIdField(VERTEX_OUT, outId));
+        edgeDoc.add(defaultMapping.newIdField(VERTEX_IN, inId));
     }
 
     static String getVertexFieldForEdgeType(String edgeType) {
@@ -482,104 +973,91 @@ public class RawLucene {
         }
         return m;
     }
-    private Map<Long, IndexOp> tmpCache;
-    private long tmpGen = -2;
-
-    private Map<Long, IndexOp> getCurrentRTCache(long gen) {
-        if (gen > tmpGen)
-            synchronized (realTimeCache) {
-                tmpGen = gen;
-                tmpCache = new ConcurrentHashMap<Long, IndexOp>(100);
-                realTimeCache.put(gen, tmpCache);
-            }
+    /**
+     * Forces the nrtManager to reopen a reader very fast. Afterwards all writes so far are
+     * searchable and released from the realtime cache.
+     */
+    void waitUntilSearchable() {
+        long gen = latestGen.get();
+        nrtManager.waitForGeneration(gen);
+        // waiting threads are notified before the refresh hook evicts
+        realTimeCache.evict(gen);
+    }
 
-        return tmpCache;
+    public void flush() {
+        waitUntilSearchable();
     }
 
-    private class FlushThread extends Thread {
+    /**
+     * @return the cache of loaded documents e.g. to read its hit and miss counters
+     */
+    public DocumentCache getDocumentCache() {
+        return docCache;
+    }
 
-        public FlushThread(String name) {
-            super(name);
+    /**
+     * The returned filter caches the DocIdSet of every segment without deletions, so a repeated
+     * lookup is only intersected with the live docs. The cache is keyed by the segment core: a
+     * reopen keeps the DocIdSets of unchanged segments and a merged away segment releases its
+     * entry.
+     *
+     * @return the shared filter for the term
+     */
+    public Filter getTermFilter(String field, BytesRef bytes) {
+        Term term = new Term(field, bytes);
+        Filter f = filterCache.get(term);
+        if (f == null) {
+            // two threads could create it, the second filter replaces the first
+            f = new CachingWrapperFilter(new TermFilter(field, bytes));
+            filterCache.put(term, f);
         }
+        return f;
+    }
 
-        @Override public void run() {
-            Throwable exception = null;
-            while (!isInterrupted()) {
-                try {
-                    cleanUpCache(latestGen);
-                } catch (InterruptedException ex) {
-                    exception = ex;
-                    break;
-                } catch (AlreadyClosedException ex) {
-                    exception = ex;
-                    break;
-                } catch (OutOfMemoryError er) {
-                    logger.error("Now closing writer due to OOM", er);
-                    try {
-                        writer.getIndexWriter().close();
-                    } catch (Exception ex) {
-                        logger.error("Error while closing writer", ex);
-                    }
-                    exception = er;
-                    break;
-                } catch (Exception ex) {
-                    logger.error("Problem while flushing", ex);
-                }
-            }
-
-            logger.debug("flush-thread interrupted, " + ((exception == null) ? "" : exception.getMessage())
-                    + ", buffer:" + calcSize());
+    /**
+     * Like getTermFilter but for the type restriction every sequence needs, so it is not
+     * subject to the eviction of the filter cache.
+     *
+     * @return the shared filter for all elements of the type
+     */
+    public Filter getTypeFilter(String type) {
+        Filter f = typeFilters.get(type);
+        if (f == null) {
+            f = new CachingWrapperFilter(new TermFilter(TYPE, getMapping(type).toBytes(TYPE, type)));
+            typeFilters.put(type, f);
         }
+        return f;
     }
 
     /**
-     * Nearly always faster than flush but slightly more expensive as it will force the nrtManager
-     * to reopen a reader very fast
+     * @param size the maximum number of cached term filters
      */
-    void waitUntilSearchable() {
-        nrtManager.waitForGeneration(latestGen);
+    public RawLucene setFilterCacheSize(int size) {
+        filterCache = new LRUCache<Term, Filter>(size);
+        return this;
     }
 
-    public void flush() {
-        try {
-            cleanUpCache(latestGen);
-        } catch (InterruptedException ex) {
-            throw new RuntimeException(ex);
-        }
+    /**
+     * @return the ordinals and per segment bitsets of the edge labels
+     */
+    public LabelDictionary getEdgeLabels() {
+        return edgeLabels;
     }
 
     /**
-     * Very slow compared to waitUntilSearchable but slightly more efficient (~3%) for indexing and
-     * so it is suited for our background thread
+     * Maximum number of cached documents. Has to be called before init.
      */
-    void cleanUpCache(long gen) throws InterruptedException {
-        cleanUpCache(gen, Math.round(ordinaryWaiting * 1000));
+    public RawLucene setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
     }
 
-    void cleanUpCache(long gen, long waiting) throws InterruptedException {
-        if (nrtManager.getCurrentSearchingGen() >= gen) {
-            // do not max out the CPU if called in a loop
-            Thread.sleep(20);
-            return;
-        }
-
-        // avoid nrtManager.waitForGeneration as we would force the reader to reopen too fast        
-        Thread.sleep(waiting);
-//        nrtManager.waitForGeneration(gen, true);
-        int removed = 0;
-        int removedItems = 0;
-        Iterator<Entry<Long, Map<Long, IndexOp>>> iter = realTimeCache.entrySet().iterator();
-        while (iter.hasNext()) {
-            Entry<Long, Map<Long, IndexOp>> e = iter.next();
-            if (e.getKey() < gen) {
-                iter.remove();
-                removed++;
-                removedItems += e.getValue().size();
-                e.getValue().clear();
-            }
-        }
-//        if (removed > 0)
-//            logger.info("removed objects " + removedItems + ", removed maps:" + removed + " older than gen:" + gen);
+    /**
+     * Maximum estimated heap usage of cached documents. Has to be called before init.
+     */
+    public RawLucene setCacheMB(int cacheMB) {
+        this.cacheMB = cacheMB;
+        return this;
     }
 
     public double getRamBufferSizeMB() {
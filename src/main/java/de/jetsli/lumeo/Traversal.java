@@ -0,0 +1,244 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo;
+
+import com.tinkerpop.blueprints.pgm.Vertex;
+import de.jetsli.lumeo.util.LongIntMap;
+import de.jetsli.lumeo.util.LongTermsFilter;
+import de.jetsli.lumeo.util.SearchExecutor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Expands a set of start vertices hop by hop, e.g.
+ * g.traverse(ids).out("knows").out("likes").limit(10)
+ *
+ * Every hop is one filter over the edges of the whole frontier instead of one query per vertex and
+ * the neighbor ids are read from the field cache, so no document gets loaded until the result is
+ * iterated. Every hop returns a vertex at most once, see neighborhood to also skip the vertices of
+ * earlier hops. Like the edge sequences only searchable edges are traversed.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class Traversal implements Iterable<Vertex> {
+
+    private static final int BATCH_SIZE = 100;
+    private final LuceneGraph g;
+    private final long[] startIds;
+    private final List<Hop> hops = new ArrayList<Hop>();
+    private int limit = Integer.MAX_VALUE;
+    private boolean neighborhood = false;
+
+    Traversal(LuceneGraph g, long... startIds) {
+        this.g = g;
+        this.startIds = startIds;
+    }
+
+    /**
+     * Follows the outgoing edges with one of the specified labels or all outgoing edges
+     */
+    public Traversal out(String... labels) {
+        hops.add(new Hop(RawLucene.VERTEX_OUT, RawLucene.VERTEX_IN, labels));
+        return this;
+    }
+
+    /**
+     * Follows the incoming edges with one of the specified labels or all incoming edges
+     */
+    public Traversal in(String... labels) {
+        hops.add(new Hop(RawLucene.VERTEX_IN, RawLucene.VERTEX_OUT, labels));
+        return this;
+    }
+
+    /**
+     * Skips vertices which were already reached with an earlier hop or which are start vertices.
+     * So every vertex is returned only for the first hop reaching it, e.g. the vertices in exactly
+     * two hops distance with out().out()
+     */
+    public Traversal neighborhood() {
+        neighborhood = true;
+        return this;
+    }
+
+    /**
+     * Stops the last hop after n vertices were found
+     */
+    public Traversal limit(int n) {
+        limit = n;
+        return this;
+    }
+
+    /**
+     * @return the ids of the vertices reached with the last hop
+     */
+    public long[] toIds() {
+        return g.getRaw().searchSomething(new SearchExecutor<long[]>() {
+
+            @Override public long[] execute(IndexSearcher searcher) throws Exception {
+                return expand(searcher);
+            }
+        });
+    }
+
+    public int count() {
+        return toIds().length;
+    }
+
+    /**
+     * Loads the vertices of the result while iterating
+     */
+    @Override public Iterator<Vertex> iterator() {
+        final long[] ids = toIds();
+        return new Iterator<Vertex>() {
+
+            int index = 0;
+            // load the vertices in batches with one searcher
+            Document[] batch = new Document[0];
+            int batchIndex = 0;
+            Vertex next;
+
+            @Override public boolean hasNext() {
+                while (next == null) {
+                    if (batchIndex >= batch.length) {
+                        if (index >= ids.length)
+                            break;
+                        int end = Math.min(ids.length, index + BATCH_SIZE);
+                        batch = g.getRaw().findByIds(Arrays.copyOfRange(ids, index, end));
+                        batchIndex = 0;
+                        index = end;
+                    }
+                    // skip removed vertices
+                    Document doc = batch[batchIndex++];
+                    if (doc != null)
+                        next = new LuceneVertex(g, doc);
+                }
+                return next != null;
+            }
+
+            @Override public Vertex next() {
+                if (!hasNext())
+                    throw new NoSuchElementException("no further vertex");
+                Vertex v = next;
+                next = null;
+                return v;
+            }
+
+            @Override public void remove() {
+                throw new UnsupportedOperationException("Not supported");
+            }
+        };
+    }
+
+    long[] expand(IndexSearcher searcher) throws Exception {
+        LongIntMap visited = new LongIntMap(startIds.length);
+        LongList frontier = new LongList(startIds.length);
+        for (long id : startIds) {
+            if (visited.put(id, 0) == LongIntMap.NOT_FOUND)
+                frontier.add(id);
+        }
+
+        AtomicReaderContext[] arc = searcher.getTopReaderContext().leaves();
+        for (int h = 0; h < hops.size() && frontier.size > 0; h++) {
+            Hop hop = hops.get(h);
+            int max = h == hops.size() - 1 ? limit : Integer.MAX_VALUE;
+            LongTermsFilter edgeFilter = new LongTermsFilter(hop.from, frontier.toArray());
+            Filter labelFilter = hop.labels.length > 0 ? g.getRaw().getEdgeLabels().newFilter(hop.labels) : null;
+
+            LongList next = new LongList(frontier.size);
+            // without neighborhood the vertices are only unique within one hop
+            if (!neighborhood)
+                visited = new LongIntMap(frontier.size);
+            for (int i = 0; i < arc.length && next.size < max; i++) {
+                AtomicReader reader = arc[i].reader();
+                DocIdSetIterator edges = iterator(edgeFilter.getDocIdSet(arc[i], reader.getLiveDocs()));
+                if (edges == null)
+                    continue;
+
+                Bits labels = null;
+                if (labelFilter != null) {
+                    DocIdSet set = labelFilter.getDocIdSet(arc[i], null);
+                    if (set == null)
+                        continue;
+                    labels = set.bits();
+                }
+
+                long[] targets = FieldCache.DEFAULT.getLongs(reader, hop.to, FieldCache.NUMERIC_UTILS_LONG_PARSER, false);
+                int doc;
+                while ((doc = edges.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    if (labels != null && !labels.get(doc))
+                        continue;
+                    long target = targets[doc];
+                    if (visited.put(target, 0) == LongIntMap.NOT_FOUND) {
+                        next.add(target);
+                        if (next.size >= max)
+                            break;
+                    }
+                }
+            }
+            frontier = next;
+        }
+        return frontier.toArray();
+    }
+
+    private static DocIdSetIterator iterator(DocIdSet set) throws Exception {
+        return set == null ? null : set.iterator();
+    }
+
+    private static class Hop {
+
+        final String from;
+        final String to;
+        final String[] labels;
+
+        Hop(String from, String to, String[] labels) {
+            this.from = from;
+            this.to = to;
+            this.labels = labels == null ? new String[0] : labels;
+        }
+    }
+
+    private static class LongList {
+
+        long[] values;
+        int size;
+
+        LongList(int capacity) {
+            values = new long[Math.max(4, capacity)];
+        }
+
+        void add(long v) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
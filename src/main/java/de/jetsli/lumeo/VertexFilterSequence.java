@@ -30,6 +30,8 @@ public class VertexFilterSequence extends LuceneFilterSequence<Vertex> {
     }
 
     @Override protected Vertex createElement(Document doc) {
-        return new LuceneVertex(g, doc);
+        LuceneVertex v = new LuceneVertex(g, doc);
+        v.setPartial(isPartial());
+        return v;
     }
 }
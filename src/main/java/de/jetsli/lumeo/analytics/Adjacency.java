@@ -0,0 +1,99 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.analytics;
+
+import de.jetsli.lumeo.GraphSnapshot;
+
+/**
+ * The neighbors of every vertex as positions instead of ids, so a superstep reads only int arrays.
+ * Created once per GraphSnapshot. Edges to vertices which are not in the snapshot are skipped.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class Adjacency {
+
+    private final GraphSnapshot snapshot;
+    private final int[] outOffsets;
+    private final int[] outNeighbors;
+    private final int[] inOffsets;
+    private final int[] inNeighbors;
+
+    public Adjacency(GraphSnapshot snapshot) {
+        this.snapshot = snapshot;
+        int vertices = snapshot.getVertexCount();
+        outOffsets = new int[vertices + 1];
+        inOffsets = new int[vertices + 1];
+        int[] outs = new int[snapshot.getEdgeCount()];
+        int[] ins = new int[snapshot.getEdgeCount()];
+        int outSize = 0;
+        int inSize = 0;
+        for (int v = 0; v < vertices; v++) {
+            outOffsets[v] = outSize;
+            for (int pos = snapshot.outStart(v); pos < snapshot.outStart(v + 1); pos++) {
+                int n = snapshot.indexOf(snapshot.getOutTarget(pos));
+                if (n >= 0)
+                    outs[outSize++] = n;
+            }
+            inOffsets[v] = inSize;
+            for (int pos = snapshot.inStart(v); pos < snapshot.inStart(v + 1); pos++) {
+                int n = snapshot.indexOf(snapshot.getInTarget(pos));
+                if (n >= 0)
+                    ins[inSize++] = n;
+            }
+        }
+        outOffsets[vertices] = outSize;
+        inOffsets[vertices] = inSize;
+        outNeighbors = outs;
+        inNeighbors = ins;
+    }
+
+    public GraphSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public int getVertexCount() {
+        return outOffsets.length - 1;
+    }
+
+    public long getVertexId(int vertex) {
+        return snapshot.getVertexId(vertex);
+    }
+
+    /** The out neighbors of a vertex are in [outStart(vertex), outStart(vertex + 1)) */
+    public int outStart(int vertex) {
+        return outOffsets[vertex];
+    }
+
+    public int getOutDegree(int vertex) {
+        return outOffsets[vertex + 1] - outOffsets[vertex];
+    }
+
+    public int getOutNeighbor(int pos) {
+        return outNeighbors[pos];
+    }
+
+    public int inStart(int vertex) {
+        return inOffsets[vertex];
+    }
+
+    public int getInDegree(int vertex) {
+        return inOffsets[vertex + 1] - inOffsets[vertex];
+    }
+
+    public int getInNeighbor(int pos) {
+        return inNeighbors[pos];
+    }
+}
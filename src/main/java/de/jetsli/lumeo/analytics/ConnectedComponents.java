@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.analytics;
+
+/**
+ * Weakly connected components via label propagation: every vertex takes the smallest component of
+ * itself and its neighbors in both directions until nothing changes. The written component is the
+ * smallest internal vertex id of the component.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class ConnectedComponents extends VertexProgram {
+
+    private String propertyName = "component";
+
+    public ConnectedComponents setPropertyName(String propertyName) {
+        this.propertyName = propertyName;
+        return this;
+    }
+
+    @Override public String getPropertyName() {
+        return propertyName;
+    }
+
+    @Override public double init(Adjacency adj, int vertex) {
+        // the positions are sorted by id, so the smallest position is the smallest id
+        return vertex;
+    }
+
+    @Override public double compute(Adjacency adj, int vertex, double[] values, int superstep) {
+        double min = values[vertex];
+        for (int pos = adj.outStart(vertex); pos < adj.outStart(vertex + 1); pos++) {
+            min = Math.min(min, values[adj.getOutNeighbor(pos)]);
+        }
+        for (int pos = adj.inStart(vertex); pos < adj.inStart(vertex + 1); pos++) {
+            min = Math.min(min, values[adj.getInNeighbor(pos)]);
+        }
+        return min;
+    }
+
+    /**
+     * A component is only complete after its diameter in supersteps. Every superstep lowers at
+     * least one value until then, so the run terminates.
+     */
+    @Override public boolean isExactOnlyIfConverged() {
+        return true;
+    }
+
+    @Override public Object toProperty(Adjacency adj, int vertex, double value) {
+        return adj.getVertexId((int) value);
+    }
+}
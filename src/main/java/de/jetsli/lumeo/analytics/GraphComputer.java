@@ -0,0 +1,191 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.analytics;
+
+import de.jetsli.lumeo.GraphSnapshot;
+import de.jetsli.lumeo.LuceneGraph;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a VertexProgram over the current GraphSnapshot of the graph, e.g.
+ * new GraphComputer(g).execute(new PageRank())
+ *
+ * The vertex positions are split into ranges which are computed in parallel. After every
+ * superstep the value arrays are swapped, so no locking is necessary. Edges added after the
+ * snapshot was taken are not seen, and edges of removed vertices are ignored.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class GraphComputer {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final LuceneGraph g;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxSupersteps = 30;
+    private int batchSize = 1000;
+    private int supersteps;
+    private boolean converged;
+    private Adjacency adjacency;
+
+    public GraphComputer(LuceneGraph g) {
+        this.g = g;
+    }
+
+    public GraphComputer setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public GraphComputer setMaxSupersteps(int maxSupersteps) {
+        this.maxSupersteps = maxSupersteps;
+        return this;
+    }
+
+    /**
+     * @param batchSize the number of vertices loaded at once while writing the results
+     */
+    public GraphComputer setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @return the number of supersteps of the last run
+     */
+    public int getSupersteps() {
+        return supersteps;
+    }
+
+    /**
+     * @return false if the last run stopped at the maximum supersteps before it converged
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    /**
+     * @return the adjacency of the current snapshot. Reused until the snapshot changes.
+     */
+    public Adjacency getAdjacency() {
+        GraphSnapshot snapshot = g.getSnapshot();
+        if (adjacency == null || adjacency.getSnapshot() != snapshot)
+            adjacency = new Adjacency(snapshot);
+        return adjacency;
+    }
+
+    /**
+     * Runs the program and writes the results as vertex properties.
+     */
+    public double[] execute(VertexProgram program) {
+        Adjacency adj = getAdjacency();
+        double[] values = run(adj, program);
+        write(adj, program, values);
+        return values;
+    }
+
+    /**
+     * @return the values by vertex position of the adjacency
+     */
+    public double[] run(final Adjacency adj, final VertexProgram program) {
+        final int vertices = adj.getVertexCount();
+        double[] values = new double[vertices];
+        for (int v = 0; v < vertices; v++) {
+            values[v] = program.init(adj, v);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // more ranges than threads to balance vertices of different degree
+            int rangeSize = Math.max(1024, vertices / (threads * 4) + 1);
+            double[] next = new double[vertices];
+            int max = program.isExactOnlyIfConverged() ? Integer.MAX_VALUE : maxSupersteps;
+            converged = false;
+            for (supersteps = 0; supersteps < max;) {
+                final int superstep = supersteps;
+                final double[] oldValues = values;
+                final double[] newValues = next;
+                program.beforeSuperstep(adj, oldValues, superstep);
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (int start = 0; start < vertices; start += rangeSize) {
+                    final int from = start;
+                    final int to = Math.min(vertices, start + rangeSize);
+                    futures.add(executor.submit(new Callable<Object>() {
+
+                        @Override public Object call() {
+                            for (int v = from; v < to; v++) {
+                                newValues[v] = program.compute(adj, v, oldValues, superstep);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+
+                supersteps++;
+                next = oldValues;
+                values = newValues;
+                if (program.isConverged(oldValues, newValues, superstep)) {
+                    converged = true;
+                    break;
+                }
+            }
+            if (!converged)
+                logger.warn(program.getClass().getSimpleName() + " did not converge within " + supersteps
+                        + " supersteps");
+            logger.info(program.getClass().getSimpleName() + " finished after " + supersteps
+                    + " supersteps with " + vertices + " vertices");
+            return values;
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Writes the values as property of the vertices. The vertices are loaded and written in
+     * batches and are searchable when this method returns. Vertices removed in the meantime are
+     * skipped.
+     */
+    public void write(Adjacency adj, VertexProgram program, double[] values) {
+        String name = program.getPropertyName();
+        int vertices = adj.getVertexCount();
+        for (int start = 0; start < vertices; start += batchSize) {
+            int end = Math.min(vertices, start + batchSize);
+            long[] ids = new long[end - start];
+            Object[] properties = new Object[end - start];
+            for (int v = start; v < end; v++) {
+                ids[v - start] = adj.getVertexId(v);
+                properties[v - start] = program.toProperty(adj, v, values[v]);
+            }
+            g.setVertexProperty(name, ids, properties);
+        }
+        g.getRaw().flush();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.analytics;
+
+/**
+ * PageRank over the outgoing edges. The rank of vertices without outgoing edges is distributed to
+ * all vertices, so the ranks sum up to 1.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class PageRank extends VertexProgram {
+
+    private String propertyName = "pagerank";
+    private double damping = 0.85;
+    private double tolerance = 1e-6;
+    // the rank of the vertices without out edges per vertex
+    private double danglingRank;
+
+    public PageRank setPropertyName(String propertyName) {
+        this.propertyName = propertyName;
+        return this;
+    }
+
+    public PageRank setDamping(double damping) {
+        this.damping = damping;
+        return this;
+    }
+
+    /**
+     * @param tolerance stop if the sum of all rank changes of a superstep is below this value
+     */
+    public PageRank setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    @Override public String getPropertyName() {
+        return propertyName;
+    }
+
+    @Override public double init(Adjacency adj, int vertex) {
+        return 1.0 / adj.getVertexCount();
+    }
+
+    @Override public void beforeSuperstep(Adjacency adj, double[] values, int superstep) {
+        double sum = 0;
+        for (int v = 0; v < values.length; v++) {
+            if (adj.getOutDegree(v) == 0)
+                sum += values[v];
+        }
+        danglingRank = sum / values.length;
+    }
+
+    @Override public double compute(Adjacency adj, int vertex, double[] values, int superstep) {
+        double sum = danglingRank;
+        for (int pos = adj.inStart(vertex); pos < adj.inStart(vertex + 1); pos++) {
+            int n = adj.getInNeighbor(pos);
+            sum += values[n] / adj.getOutDegree(n);
+        }
+        return (1 - damping) / values.length + damping * sum;
+    }
+
+    @Override public boolean isConverged(double[] oldValues, double[] values, int superstep) {
+        double diff = 0;
+        for (int i = 0; i < values.length; i++) {
+            diff += Math.abs(oldValues[i] - values[i]);
+        }
+        return diff < tolerance;
+    }
+}
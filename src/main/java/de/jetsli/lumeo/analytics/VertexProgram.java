@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.analytics;
+
+/**
+ * A vertex centric algorithm with one double value per vertex. In every superstep compute is
+ * called for all vertices and reads the values of the previous superstep only, so the vertices can
+ * be computed in parallel without locking.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public abstract class VertexProgram {
+
+    /**
+     * @return the name of the vertex property the result is written to
+     */
+    public abstract String getPropertyName();
+
+    /**
+     * @return the value of the vertex before the first superstep
+     */
+    public abstract double init(Adjacency adj, int vertex);
+
+    /**
+     * Called once before every superstep, e.g. to aggregate over all values
+     */
+    public void beforeSuperstep(Adjacency adj, double[] values, int superstep) {
+    }
+
+    /**
+     * @param values the values of the previous superstep. Must not be modified.
+     * @return the new value of the vertex
+     */
+    public abstract double compute(Adjacency adj, int vertex, double[] values, int superstep);
+
+    /**
+     * @return true if no further superstep is necessary. Per default if no value changed.
+     */
+    public boolean isConverged(double[] oldValues, double[] values, int superstep) {
+        for (int i = 0; i < values.length; i++) {
+            if (oldValues[i] != values[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the result is only correct after convergence, e.g. label propagation which
+     * needs as many supersteps as the diameter of the graph. Then the maximum supersteps of the
+     * GraphComputer are ignored.
+     */
+    public boolean isExactOnlyIfConverged() {
+        return false;
+    }
+
+    /**
+     * @return the property value written for the vertex
+     */
+    public Object toProperty(Adjacency adj, int vertex, double value) {
+        return value;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Intersects the DocIdSets of its filters without allocating a result bitset like the
+ * BooleanFilter does. Sets without random access (e.g. a sparse IntArrayDocIdSet) are iterated in
+ * lock step and the docs they agree on are checked against the random access sets. So a sparse
+ * set combined with cached bitsets costs only its own size.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class AndFilter extends Filter {
+
+    private final List<Filter> filters = new ArrayList<Filter>(4);
+
+    public AndFilter add(Filter f) {
+        filters.add(f);
+        return this;
+    }
+
+    @Override public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        if (filters.size() == 1)
+            return filters.get(0).getDocIdSet(context, acceptDocs);
+
+        final List<DocIdSet> iterated = new ArrayList<DocIdSet>(filters.size());
+        final List<Bits> checked = new ArrayList<Bits>(filters.size());
+        DocIdSet first = null;
+        for (Filter f : filters) {
+            // every set applies the acceptDocs, so they are not needed for the intersection
+            DocIdSet set = f.getDocIdSet(context, acceptDocs);
+            if (set == null)
+                return null;
+            if (first == null)
+                first = set;
+            Bits bits = set.bits();
+            if (bits == null)
+                iterated.add(set);
+            else
+                checked.add(bits);
+        }
+        if (iterated.isEmpty()) {
+            // one of the random access sets needs to lead
+            iterated.add(first);
+            checked.remove(0);
+        }
+
+        return new DocIdSet() {
+
+            @Override public DocIdSetIterator iterator() throws IOException {
+                DocIdSetIterator[] iters = new DocIdSetIterator[iterated.size()];
+                for (int i = 0; i < iters.length; i++) {
+                    iters[i] = iterated.get(i).iterator();
+                    if (iters[i] == null)
+                        return null;
+                }
+                return new Conjunction(iters, checked.toArray(new Bits[checked.size()]));
+            }
+        };
+    }
+
+    @Override public String toString() {
+        return "and" + filters;
+    }
+
+    private static class Conjunction extends DocIdSetIterator {
+
+        private final DocIdSetIterator[] iters;
+        private final Bits[] bits;
+        private int doc = -1;
+
+        Conjunction(DocIdSetIterator[] iters, Bits[] bits) {
+            this.iters = iters;
+            this.bits = bits;
+        }
+
+        @Override public int docID() {
+            return doc;
+        }
+
+        @Override public int nextDoc() throws IOException {
+            return align(iters[0].nextDoc());
+        }
+
+        @Override public int advance(int target) throws IOException {
+            return align(iters[0].advance(target));
+        }
+
+        /**
+         * @return the first doc of all sets starting with the candidate of the lead iterator
+         */
+        private int align(int candidate) throws IOException {
+            outer:
+            while (candidate != NO_MORE_DOCS) {
+                for (int i = 1; i < iters.length; i++) {
+                    int other = iters[i].docID();
+                    if (other < candidate)
+                        other = iters[i].advance(candidate);
+                    if (other > candidate) {
+                        candidate = other == NO_MORE_DOCS ? NO_MORE_DOCS : iters[0].advance(other);
+                        continue outer;
+                    }
+                }
+                for (Bits b : bits) {
+                    if (!b.get(candidate)) {
+                        candidate = iters[0].nextDoc();
+                        continue outer;
+                    }
+                }
+                return doc = candidate;
+            }
+            return doc = NO_MORE_DOCS;
+        }
+    }
+}
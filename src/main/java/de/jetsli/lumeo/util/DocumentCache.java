@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Caches loaded documents by their internal id. Its weight is the estimated heap usage in bytes.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class DocumentCache extends LRUCache<Long, Document> {
+
+    public DocumentCache(int maxSize, long maxBytes) {
+        super(maxSize, maxBytes, 16);
+    }
+
+    @Override protected long weigh(Document doc) {
+        return estimateBytes(doc);
+    }
+
+    public static long estimateBytes(Document doc) {
+        // document, field list and map entry
+        long bytes = 96;
+        for (IndexableField f : doc.getFields()) {
+            bytes += 64 + 2 * f.name().length();
+            BytesRef ref = f.binaryValue();
+            if (ref != null)
+                bytes += ref.length;
+            else if (f.numericValue() != null)
+                bytes += 16;
+            else if (f.stringValue() != null)
+                bytes += 40 + 2 * f.stringValue().length();
+        }
+        return bytes;
+    }
+}
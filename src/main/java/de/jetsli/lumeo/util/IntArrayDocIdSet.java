@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import java.util.Arrays;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+
+/**
+ * A DocIdSet of sorted docIDs for sparse sets: it needs 4 bytes per doc instead of maxDoc / 8
+ * bytes of a bitset.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class IntArrayDocIdSet extends DocIdSet {
+
+    private final int[] docs;
+    private final int size;
+
+    /**
+     * @param docs the sorted docIDs in [0, size)
+     */
+    public IntArrayDocIdSet(int[] docs, int size) {
+        this.docs = docs;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override public boolean isCacheable() {
+        return true;
+    }
+
+    /**
+     * Random access by binary search, so a conjunction should rather iterate this set
+     */
+    @Override public Bits bits() {
+        return null;
+    }
+
+    @Override public DocIdSetIterator iterator() {
+        return new DocIdSetIterator() {
+
+            int index = -1;
+            int doc = -1;
+
+            @Override public int docID() {
+                return doc;
+            }
+
+            @Override public int nextDoc() {
+                if (++index >= size)
+                    return doc = NO_MORE_DOCS;
+                return doc = docs[index];
+            }
+
+            @Override public int advance(int target) {
+                if (index + 1 >= size) {
+                    index = size;
+                    return doc = NO_MORE_DOCS;
+                }
+                int pos = Arrays.binarySearch(docs, index + 1, size, target);
+                index = pos < 0 ? -pos - 1 : pos;
+                if (index >= size)
+                    return doc = NO_MORE_DOCS;
+                return doc = docs[index];
+            }
+        };
+    }
+}
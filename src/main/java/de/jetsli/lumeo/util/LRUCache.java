@@ -1,12 +1,12 @@
 /*
  *  Copyright 2011 Peter Karich info@jetsli.de
- * 
+ *
  *  Licensed under the Apache License, Version 2.0 (the "License");
  *  you may not use this file except in compliance with the License.
  *  You may obtain a copy of the License at
- * 
+ *
  *       http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  *  Unless required by applicable law or agreed to in writing, software
  *  distributed under the License is distributed on an "AS IS" BASIS,
  *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
@@ -15,23 +15,198 @@
  */
 package de.jetsli.lumeo.util;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Thread safe LRU cache which is bounded by the number of entries and by the weight of its values
+ * (e.g. estimated bytes). It is split into segments with their own lock to reduce contention.
+ *
+ * To avoid caching stale values a loader should fetch the stamp before loading and use
+ * putIfUnchanged: every remove of a key of the same segment changes the stamp.
  *
  * @author Peter Karich, info@jetsli.de
  */
-@SuppressWarnings(value = "serial")
-class LRUCache<K, V> extends LinkedHashMap<K, V> {
-    private int maxSize;
+public class LRUCache<K, V> {
+
+    private final Segment<K, V>[] segments;
+    private final int mask;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
 
     public LRUCache(int maxSize) {
-        this.maxSize = maxSize;
+        this(maxSize, Long.MAX_VALUE, 16);
+    }
+
+    public LRUCache(int maxSize, long maxWeight, int concurrency) {
+        int count = 1;
+        while (count < concurrency) {
+            count <<= 1;
+        }
+        mask = count - 1;
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<K, V>(Math.max(1, maxSize / count), Math.max(1, maxWeight / count));
+        }
+    }
+
+    /**
+     * @return the weight of the value. Defaults to 1.
+     */
+    protected long weigh(V value) {
+        return 1;
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[h & mask];
+    }
+
+    public V get(K key) {
+        Segment<K, V> s = segmentFor(key);
+        Entry<V> e;
+        synchronized (s) {
+            e = s.get(key);
+        }
+        if (e == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return e.value;
+    }
+
+    public long getStamp(K key) {
+        Segment<K, V> s = segmentFor(key);
+        synchronized (s) {
+            return s.stamp;
+        }
+    }
+
+    public void put(K key, V value) {
+        Segment<K, V> s = segmentFor(key);
+        synchronized (s) {
+            putInternal(s, key, value);
+        }
+    }
+
+    /**
+     * Puts the value only if no key of the same segment was removed since the stamp was fetched.
+     */
+    public boolean putIfUnchanged(K key, V value, long stamp) {
+        Segment<K, V> s = segmentFor(key);
+        synchronized (s) {
+            if (s.stamp != stamp)
+                return false;
+            putInternal(s, key, value);
+            return true;
+        }
+    }
+
+    private void putInternal(Segment<K, V> s, K key, V value) {
+        Entry<V> e = new Entry<V>(value, weigh(value));
+        Entry<V> old = s.put(key, e);
+        s.weight += e.weight;
+        if (old != null)
+            s.weight -= old.weight;
+
+        Iterator<Entry<V>> iter = s.values().iterator();
+        while ((s.size() > s.maxSize || s.weight > s.maxWeight) && iter.hasNext()) {
+            Entry<V> eldest = iter.next();
+            // the new entry is the youngest, so it gets removed only if it is too heavy
+            iter.remove();
+            s.weight -= eldest.weight;
+            evictions.incrementAndGet();
+        }
     }
 
-    @Override
-    protected boolean removeEldestEntry(java.util.Map.Entry<K, V> eldest) {
-        return size() > maxSize;
+    public V remove(K key) {
+        Segment<K, V> s = segmentFor(key);
+        synchronized (s) {
+            s.stamp++;
+            Entry<V> e = s.remove(key);
+            if (e == null)
+                return null;
+            s.weight -= e.weight;
+            return e.value;
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> s : segments) {
+            synchronized (s) {
+                s.stamp++;
+                s.clear();
+                s.weight = 0;
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> s : segments) {
+            synchronized (s) {
+                size += s.size();
+            }
+        }
+        return size;
+    }
+
+    public long getWeight() {
+        long weight = 0;
+        for (Segment<K, V> s : segments) {
+            synchronized (s) {
+                weight += s.weight;
+            }
+        }
+        return weight;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override public String toString() {
+        return "size:" + size() + " weight:" + getWeight() + " hits:" + getHits() + " misses:" + getMisses()
+                + " evictions:" + getEvictions();
+    }
+
+    private static class Entry<V> {
+
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    @SuppressWarnings(value = "serial")
+    private static class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+
+        final int maxSize;
+        final long maxWeight;
+        long weight;
+        long stamp;
+
+        Segment(int maxSize, long maxWeight) {
+            // access order => iteration starts with the least recently used entry
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.maxWeight = maxWeight;
+        }
     }
-    
 }
@@ -0,0 +1,208 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Maps the terms of a field with few distinct values (e.g. the edge labels) to small int ordinals.
+ * The terms dictionary of the index is the persistent part: ordinals are assigned in the order the
+ * labels are seen and stay the same while the dictionary lives.
+ *
+ * Per segment core it caches the ordinal of every document and a bitset per label. Both are
+ * created from the postings on first use and do not include deletions, so filtering by label is a
+ * bitset AND with the live docs and the label of a hit is available without loading its document.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class LabelDictionary {
+
+    private final String field;
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<String, Integer>();
+    private final List<String> labels = new ArrayList<String>();
+    // segment core key -> segment data. Released if the segment got merged away.
+    private final Map<Object, SegmentLabels> segments =
+            Collections.synchronizedMap(new WeakHashMap<Object, SegmentLabels>());
+
+    public LabelDictionary(String field) {
+        this.field = field;
+    }
+
+    /**
+     * @return the ordinal of the label, a new one if it is unknown
+     */
+    public int add(String label) {
+        Integer ord = ordinals.get(label);
+        if (ord != null)
+            return ord;
+
+        synchronized (labels) {
+            ord = ordinals.get(label);
+            if (ord == null) {
+                ord = labels.size();
+                labels.add(label);
+                ordinals.put(label, ord);
+            }
+            return ord;
+        }
+    }
+
+    /**
+     * @return the ordinal of the label or -1 if it is unknown
+     */
+    public int getOrdinal(String label) {
+        Integer ord = ordinals.get(label);
+        return ord == null ? -1 : ord;
+    }
+
+    public String getLabel(int ordinal) {
+        synchronized (labels) {
+            return labels.get(ordinal);
+        }
+    }
+
+    public int size() {
+        synchronized (labels) {
+            return labels.size();
+        }
+    }
+
+    /**
+     * @return the label of the document without loading it or null if it has none
+     */
+    public String getLabel(AtomicReader reader, int docID) throws IOException {
+        int ord = getSegment(reader).ords[docID];
+        return ord < 0 ? null : getLabel(ord);
+    }
+
+    /**
+     * @return the documents of the segment with the label, including deleted ones. Null if the
+     * segment has no such document.
+     */
+    public FixedBitSet getBits(AtomicReader reader, String label) throws IOException {
+        return getSegment(reader).getBits(reader, label);
+    }
+
+    /**
+     * @return a filter for the documents with one of the specified labels
+     */
+    public Filter newFilter(final String... labels) {
+        return new Filter() {
+
+            @Override public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+                FixedBitSet result = null;
+                for (int i = 0; i < labels.length; i++) {
+                    FixedBitSet bits = getBits(context.reader(), labels[i]);
+                    if (bits == null)
+                        continue;
+                    if (result == null)
+                        // never modify the cached bitset
+                        result = labels.length == 1 ? bits : bits.clone();
+                    else
+                        result.or(bits);
+                }
+                return result == null ? null : BitsFilteredDocIdSet.wrap(result, acceptDocs);
+            }
+
+            @Override public String toString() {
+                return field + ":" + Arrays.toString(labels);
+            }
+        };
+    }
+
+    private SegmentLabels getSegment(AtomicReader reader) throws IOException {
+        Object key = reader.getCoreCacheKey();
+        SegmentLabels s = segments.get(key);
+        if (s == null) {
+            // two threads could create it, both results are equal
+            s = new SegmentLabels(reader);
+            segments.put(key, s);
+        }
+        return s;
+    }
+
+    private class SegmentLabels {
+
+        // -1 if a document has no label
+        final int[] ords;
+        // created on demand, the ordinals of the labels not in this segment stay null
+        final FixedBitSet[] bits;
+        final BytesRef[] terms;
+
+        SegmentLabels(AtomicReader reader) throws IOException {
+            ords = new int[reader.maxDoc()];
+            Arrays.fill(ords, -1);
+            List<BytesRef> tmp = new ArrayList<BytesRef>();
+            Terms t = reader.terms(field);
+            if (t != null) {
+                TermsEnum te = t.iterator(null);
+                DocsEnum docs = null;
+                BytesRef term;
+                while ((term = te.next()) != null) {
+                    int ord = add(term.utf8ToString());
+                    docs = te.docs(null, docs, false);
+                    int docID;
+                    while ((docID = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                        ords[docID] = ord;
+                    }
+                    while (tmp.size() <= ord) {
+                        tmp.add(null);
+                    }
+                    tmp.set(ord, BytesRef.deepCopyOf(term));
+                }
+            }
+            terms = tmp.toArray(new BytesRef[tmp.size()]);
+            bits = new FixedBitSet[terms.length];
+        }
+
+        synchronized FixedBitSet getBits(AtomicReader reader, String label) throws IOException {
+            int ord = getOrdinal(label);
+            // all labels of the segment were added to the dictionary on creation
+            if (ord < 0 || ord >= terms.length || terms[ord] == null)
+                return null;
+
+            if (bits[ord] == null) {
+                FixedBitSet set = new FixedBitSet(ords.length);
+                DocsEnum docs = reader.termDocsEnum(null, field, terms[ord], false);
+                int docID;
+                while ((docID = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    set.set(docID);
+                }
+                bits[ord] = set;
+            }
+            return bits[ord];
+        }
+    }
+}
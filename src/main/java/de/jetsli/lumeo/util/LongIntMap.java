@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from long keys to non negative int values without boxing. Not thread safe.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class LongIntMap {
+
+    public static final int NOT_FOUND = -1;
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    public LongIntMap(int expectedSize) {
+        int cap = 16;
+        // keep load factor below 0.5
+        while (cap < expectedSize * 2) {
+            cap <<= 1;
+        }
+        allocate(cap);
+    }
+
+    private void allocate(int cap) {
+        keys = new long[cap];
+        values = new int[cap];
+        Arrays.fill(values, NOT_FOUND);
+        mask = cap - 1;
+        size = 0;
+    }
+
+    /**
+     * @return the previous value or NOT_FOUND
+     */
+    public int put(long key, int value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Value must not be negative:" + value);
+
+        if (size * 2 >= keys.length)
+            rehash(keys.length << 1);
+
+        int slot = slot(key);
+        int old = values[slot];
+        if (old == NOT_FOUND)
+            size++;
+        keys[slot] = key;
+        values[slot] = value;
+        return old;
+    }
+
+    /**
+     * @return the value or NOT_FOUND
+     */
+    public int get(long key) {
+        return values[slot(key)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != NOT_FOUND && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int newCap) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCap);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != NOT_FOUND)
+                put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    static int hash(long key) {
+        // mix the bits as ids are mostly sequential
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
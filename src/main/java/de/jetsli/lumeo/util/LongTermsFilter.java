@@ -0,0 +1,111 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.NumericUtils;
+
+/**
+ * Accepts documents which contain one of many ids in a field indexed as LongField, e.g. all edges
+ * of a set of vertices. Like a TermsFilter but without creating a Term per id: the ids are sorted
+ * once and every segment is processed with one terms enum.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class LongTermsFilter extends Filter {
+
+    private final String fieldName;
+    private final long[] ids;
+
+    public LongTermsFilter(String fieldName, long... ids) {
+        this.fieldName = fieldName;
+        this.ids = ids.clone();
+        Arrays.sort(this.ids);
+    }
+
+    /**
+     * Collects the docIDs into a sorted int array as long as less than 1/32 of the docs match (a
+     * small frontier) and switches to a bitset for larger sets, like the TermFilter.
+     */
+    @Override
+    public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        AtomicReader reader = context.reader();
+        Terms terms = reader.terms(fieldName);
+        if (terms == null)
+            return DocIdSet.EMPTY_DOCIDSET;
+
+        int maxSparse = reader.maxDoc() >>> TermFilter.SPARSE_SHIFT;
+        int[] sparse = new int[Math.min(16, maxSparse + 1)];
+        int size = 0;
+        FixedBitSet dense = null;
+        TermsEnum te = terms.iterator(null);
+        DocsEnum docs = null;
+        BytesRef bytes = new BytesRef(NumericUtils.BUF_SIZE_LONG);
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0 && ids[i] == ids[i - 1])
+                continue;
+
+            NumericUtils.longToPrefixCoded(ids[i], 0, bytes);
+            if (!te.seekExact(bytes, false))
+                continue;
+
+            docs = te.docs(acceptDocs, docs, false);
+            int doc;
+            while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (dense != null) {
+                    dense.set(doc);
+                    continue;
+                }
+                if (size == maxSparse) {
+                    dense = new FixedBitSet(reader.maxDoc());
+                    for (int j = 0; j < size; j++) {
+                        dense.set(sparse[j]);
+                    }
+                    dense.set(doc);
+                    continue;
+                }
+                if (size == sparse.length)
+                    sparse = Arrays.copyOf(sparse, Math.min(maxSparse, size * 2));
+                sparse[size++] = doc;
+            }
+        }
+        if (dense != null)
+            return dense;
+        if (size == 0)
+            return DocIdSet.EMPTY_DOCIDSET;
+
+        // the docs of the different ids are interleaved
+        Arrays.sort(sparse, 0, size);
+        int unique = 1;
+        for (int j = 1; j < size; j++) {
+            if (sparse[j] != sparse[unique - 1])
+                sparse[unique++] = sparse[j];
+        }
+        return new IntArrayDocIdSet(sparse, unique);
+    }
+}
@@ -38,8 +38,12 @@ public class LuceneHelper {
         return bytes;
     }
 
+    /**
+     * Encodes the value like the full precision term of a DoubleField so that the terms sort like
+     * the doubles
+     */
     public static BytesRef newRefFromDouble(double value) {
-        return newRefFromLong(Double.doubleToLongBits(value));
+        return newRefFromLong(NumericUtils.doubleToSortableLong(value));
     }
 
     /**
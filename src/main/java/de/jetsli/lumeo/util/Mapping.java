@@ -24,7 +24,8 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.core.KeywordAnalyzer;
 import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.DateTools;
+import org.apache.lucene.document.DoubleDocValuesField;
+import org.apache.lucene.document.DoubleField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.FieldType;
@@ -36,8 +37,13 @@ import org.apache.lucene.index.FieldInfo.IndexOptions;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.NumericRangeFilter;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeFilter;
 import org.apache.lucene.util.BytesRef;
 
 /**
@@ -58,15 +64,20 @@ public class Mapping {
     }
     private final FieldType storedFieldType;
     private final FieldType indexedFieldType;
+    private final FieldType indexedOnlyFieldType;
     private final FieldType longFieldTypeSI;
+    private final FieldType longFieldTypeI;
+    private final FieldType doubleFieldTypeSI;
+    private final FieldType doubleFieldTypeI;
     private final Map<String, Type> fieldToTypeMapping;
     private final LumeoPerFieldAnalyzer analyzer;
+    // field and value -> parsed query, cleared if a field mapping changes
+    private final LRUCache<String, Query> queryCache = new LRUCache<String, Query>(100);
     private String type;
 
     public Mapping(String type) {
         this.type = type;
         
-        // TODO use one field _source instead of several fields
         storedFieldType = new FieldType();        
         storedFieldType.setStored(true);        
         storedFieldType.setOmitNorms(true);    
@@ -81,8 +92,16 @@ public class Mapping {
         indexedFieldType.setStored(true);
         indexedFieldType.setIndexed(true);
         indexedFieldType.freeze();
-        
+
+        // properties are stored in the source field
+        indexedOnlyFieldType = new FieldType(indexedFieldType);
+        indexedOnlyFieldType.setStored(false);
+        indexedOnlyFieldType.freeze();
+
         longFieldTypeSI = getLongFieldType(true, true);
+        longFieldTypeI = getLongFieldType(true, false);
+        doubleFieldTypeSI = getDoubleFieldType(true, true);
+        doubleFieldTypeI = getDoubleFieldType(true, false);
 
         analyzer = new LumeoPerFieldAnalyzer(getDefaultAnalyzer());
         fieldToTypeMapping = new LinkedHashMap<String, Type>(4);
@@ -107,6 +126,7 @@ public class Mapping {
     /** @return true if no previous type was overwritten */
     public Type putField(String key, Type type) {
         Type oldType = fieldToTypeMapping.put(key, type);
+        queryCache.clear();
         switch (type) {
             case TEXT:
                 analyzer.putAnalyzer(key, STANDARD_ANALYZER);
@@ -156,14 +176,59 @@ public class Mapping {
                 return newTextField(key, (String) value);
             case LONG:
                 return newLongField(key, ((Number) value).longValue());
+            case DOUBLE:
+                return new DoubleField(key, ((Number) value).doubleValue(), doubleFieldTypeSI);
+            default:
+                throw new IllegalStateException("something went wrong while determining field type");
+        }
+    }
+
+    /**
+     * Creates an indexed but not stored field for the value of a property. The value itself is
+     * stored in the source field.
+     *
+     * @return null if the key is not mapped and so it should not get indexed
+     */
+    public Field createIndexedField(String key, Object value) {
+        Type t = fieldToTypeMapping.get(key);
+        if (t == null)
+            return null;
+
+        switch (t) {
+            case DATE:
+                return new LongField(key, ((Date) value).getTime(), longFieldTypeI);
+            case STRING:
+                return new Field(key, (String) value, indexedOnlyFieldType);
+            case STRING_LC:
+                return new Field(key, KeywordAnalyzerLowerCase.transform((String) value), indexedOnlyFieldType);
+            case TEXT:
+                return newTextField(key, (String) value);
+            case LONG:
+                return new LongField(key, ((Number) value).longValue(), longFieldTypeI);
+            case DOUBLE:
+                return new DoubleField(key, ((Number) value).doubleValue(), doubleFieldTypeI);
             default:
                 throw new IllegalStateException("something went wrong while determining field type");
         }
     }
 
+    /**
+     * Creates the DocValues column for the value of a property which is used for sorting.
+     *
+     * @return null if the type of the key needs no column
+     */
+    public Field createDocValuesField(String key, Object value) {
+        if (fieldToTypeMapping.get(key) == Type.DOUBLE)
+            return new DoubleDocValuesField(key, ((Number) value).doubleValue());
+        return null;
+    }
+
+    /**
+     * Dates are indexed as trie encoded milliseconds like a LONG, so a range of them is a
+     * NumericRangeFilter
+     */
     public Field newDateField(String name, long value) {
-        // TODO performance shouldn't we round the long and use long instead of string?
-        return new Field(name, DateTools.timeToString(value, DateTools.Resolution.MINUTE), indexedFieldType);
+        return new LongField(name, value, longFieldTypeSI);
     }
 
     public static FieldType getLongFieldType(boolean indexed, boolean stored) {
@@ -175,6 +240,15 @@ public class Mapping {
         return ft;
     }
     
+    public static FieldType getDoubleFieldType(boolean indexed, boolean stored) {
+        FieldType ft = new FieldType();
+        ft.setNumericType(FieldType.NumericType.DOUBLE);
+        ft.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+        ft.setIndexed(indexed);
+        ft.setStored(stored);
+        return ft;
+    }
+
     public Field newLongField(String name, long id) {
         LongField idField = new LongField(name, id, longFieldTypeSI);
         return idField;
@@ -201,6 +275,14 @@ public class Mapping {
         return new TextField(name, val);
     }
 
+    /**
+     * @return true if the field is analyzed and so a value has to be searched via a query. All
+     * other fields can be searched via a filter of the term from toBytes.
+     */
+    public boolean isFullText(String key) {
+        return fieldToTypeMapping.get(key) == Type.TEXT;
+    }
+
     public boolean exists(String key) {
         return fieldToTypeMapping.containsKey(key);
     }
@@ -219,7 +301,14 @@ public class Mapping {
     }
 
     public BytesRef toBytes(String fieldName, Object o) {
-        if (o instanceof String) {
+        Type t = fieldToTypeMapping.get(fieldName);
+        if (t == Type.LONG && o instanceof Number)
+            return LuceneHelper.newRefFromLong(((Number) o).longValue());
+        else if (t == Type.DOUBLE && o instanceof Number)
+            return LuceneHelper.newRefFromDouble(((Number) o).doubleValue());
+        else if (t == Type.DATE || o instanceof Date)
+            return LuceneHelper.newRefFromLong(toLong(fieldName, o));
+        else if (o instanceof String) {
             if (getAnalyzerFor(fieldName) == KEYWORD_ANALYZER_LC)
                 return new BytesRef(((String) o).toLowerCase());
             else
@@ -230,13 +319,84 @@ public class Mapping {
             return LuceneHelper.newRefFromLong((Long) o);
         else if (o instanceof Double)
             return LuceneHelper.newRefFromDouble((Double) o);
-        else if (o instanceof Date)
-            return new BytesRef(DateTools.timeToString(((Date) o).getTime(), DateTools.Resolution.MINUTE));
         else
             throw new UnsupportedOperationException(
                     "Couldn't find bytesRef usage for object  " + o);
     }
 
+    /**
+     * Creates a filter for all values between from and to (both inclusive). LONG and DATE fields
+     * use the trie terms of the precision steps, so only a few terms are visited even for large
+     * ranges. Other non text fields compare the terms.
+     *
+     * @param from the lower bound or null if the range is open
+     * @param to the upper bound or null if the range is open
+     */
+    public Filter getRangeFilter(String field, Object from, Object to) {
+        Type t = fieldToTypeMapping.get(field);
+        if (t == null)
+            throw new UnsupportedOperationException("key not indexed " + field);
+
+        switch (t) {
+            case LONG:
+            case DATE:
+                return NumericRangeFilter.newLongRange(field, toLong(field, from), toLong(field, to), true, true);
+            case DOUBLE:
+                return NumericRangeFilter.newDoubleRange(field, toDouble(field, from), toDouble(field, to), true, true);
+            case STRING:
+            case STRING_LC:
+                return new TermRangeFilter(field, from == null ? null : toBytes(field, from),
+                        to == null ? null : toBytes(field, to), true, true);
+            default:
+                throw new UnsupportedOperationException("range not supported for " + field + " of type " + t);
+        }
+    }
+
+    /**
+     * @return the sort field for the values of a mapped field. DOUBLE values are read from their
+     * DocValues column, LONG and DATE values from the trie terms via the FieldCache.
+     */
+    public SortField getSortField(String field, boolean reverse) {
+        Type t = fieldToTypeMapping.get(field);
+        if (t == null)
+            throw new UnsupportedOperationException("key not indexed " + field);
+
+        switch (t) {
+            case LONG:
+            case DATE:
+                return new SortField(field, FieldCache.NUMERIC_UTILS_LONG_PARSER, reverse);
+            case DOUBLE:
+                SortField sf = new SortField(field, SortField.Type.DOUBLE, reverse);
+                sf.setUseIndexValues(true);
+                return sf;
+            case STRING:
+            case STRING_LC:
+                return new SortField(field, SortField.Type.STRING, reverse);
+            default:
+                throw new UnsupportedOperationException("sort not supported for " + field + " of type " + t);
+        }
+    }
+
+    private Double toDouble(String field, Object o) {
+        if (o == null)
+            return null;
+        else if (o instanceof Number)
+            return ((Number) o).doubleValue();
+        else
+            throw new UnsupportedOperationException("Couldn't convert " + o + " of " + field + " into a double");
+    }
+
+    private Long toLong(String field, Object o) {
+        if (o == null)
+            return null;
+        else if (o instanceof Date)
+            return ((Date) o).getTime();
+        else if (o instanceof Number)
+            return ((Number) o).longValue();
+        else
+            throw new UnsupportedOperationException("Couldn't convert " + o + " of " + field + " into a long");
+    }
+
     public Query getQuery(String field, Object o) {
         Analyzer a = getAnalyzerFor(field);
         if (a == KEYWORD_ANALYZER_LC)
@@ -244,10 +404,18 @@ public class Mapping {
         else if (a == KEYWORD_ANALYZER)
             return new TermQuery(new Term(field, (String) o));
 
-        try {
-            return new QueryParser(RawLucene.VERSION, field, a).parse(o.toString());
-        } catch (ParseException ex) {
-            throw new RuntimeException(ex);
+        // parsing is expensive and the same lookups are repeated often
+        String key = field + '\u0000' + o;
+        Query q = queryCache.get(key);
+        if (q == null) {
+            try {
+                q = new QueryParser(RawLucene.VERSION, field, a).parse(o.toString());
+            } catch (ParseException ex) {
+                throw new RuntimeException(ex);
+            }
+            queryCache.put(key, q);
         }
+        // queries are mutable (boost, clauses), so every caller gets its own copy
+        return q.clone();
     }
 }
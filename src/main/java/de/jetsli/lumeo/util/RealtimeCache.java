@@ -0,0 +1,213 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import java.util.Arrays;
+import org.apache.lucene.document.Document;
+
+/**
+ * Holds the latest written document per id until the searcher is able to see it. Every entry
+ * carries the indexing generation of its write, so evict(searchingGen) removes exactly the entries
+ * which are searchable. Keys are primitive longs in open addressing tables, so a lookup does not
+ * allocate and a buffered write costs a long, a long and a reference.
+ *
+ * The table is split into segments with their own lock like the LRUCache.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class RealtimeCache {
+
+    /**
+     * Returned from get if the latest write of the id was a delete
+     */
+    public static final Document DELETED = new Document();
+    private final Segment[] segments;
+    private final int mask;
+
+    public RealtimeCache() {
+        this(16);
+    }
+
+    public RealtimeCache(int concurrency) {
+        int count = 1;
+        while (count < concurrency) {
+            count <<= 1;
+        }
+        mask = count - 1;
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    private Segment segmentFor(long id) {
+        // use other bits than the slot within the segment
+        return segments[(LongIntMap.hash(id) >>> 16) & mask];
+    }
+
+    /**
+     * Stores the document written with the specified generation. An older generation does not
+     * overwrite a newer one of the same id.
+     */
+    public void put(long id, Document doc, long gen) {
+        if (doc == null)
+            throw new NullPointerException("Use DELETED instead of null for id " + id);
+        Segment s = segmentFor(id);
+        synchronized (s) {
+            s.put(id, doc, gen);
+        }
+    }
+
+    /**
+     * @return the latest written document, DELETED or null if the id is not in the cache
+     */
+    public Document get(long id) {
+        Segment s = segmentFor(id);
+        synchronized (s) {
+            return s.get(id);
+        }
+    }
+
+    /**
+     * Removes all entries with a generation less or equal to the specified one.
+     *
+     * @return the number of removed entries
+     */
+    public int evict(long searchingGen) {
+        int removed = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                removed += s.evict(searchingGen);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return a snapshot of all ids in the cache
+     */
+    public long[] getIds() {
+        long[] result = new long[0];
+        int size = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                if (size + s.size > result.length)
+                    result = Arrays.copyOf(result, Math.max(result.length * 2, size + s.size));
+                for (int i = 0; i < s.docs.length; i++) {
+                    if (s.docs[i] != null)
+                        result[size++] = s.ids[i];
+                }
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    public void clear() {
+        evict(Long.MAX_VALUE);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                size += s.size;
+            }
+        }
+        return size;
+    }
+
+    private static class Segment {
+
+        long[] ids;
+        long[] gens;
+        // null marks a free slot
+        Document[] docs;
+        int size;
+        int mask;
+        // skip evict if nothing is old enough
+        long minGen = Long.MAX_VALUE;
+
+        Segment() {
+            allocate(16);
+        }
+
+        private void allocate(int cap) {
+            ids = new long[cap];
+            gens = new long[cap];
+            docs = new Document[cap];
+            mask = cap - 1;
+            size = 0;
+            minGen = Long.MAX_VALUE;
+        }
+
+        private int slot(long id) {
+            int slot = LongIntMap.hash(id) & mask;
+            while (docs[slot] != null && ids[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        Document get(long id) {
+            return docs[slot(id)];
+        }
+
+        void put(long id, Document doc, long gen) {
+            if (size * 2 >= docs.length)
+                rehash(docs.length << 1, Long.MIN_VALUE);
+
+            int slot = slot(id);
+            if (docs[slot] == null)
+                size++;
+            else if (gens[slot] > gen)
+                return;
+
+            ids[slot] = id;
+            gens[slot] = gen;
+            docs[slot] = doc;
+            minGen = Math.min(minGen, gen);
+        }
+
+        int evict(long searchingGen) {
+            if (minGen > searchingGen)
+                return 0;
+
+            int old = size;
+            // shrink if the remaining entries allow it
+            int cap = docs.length;
+            while (cap > 16 && cap / 8 > size) {
+                cap >>= 1;
+            }
+            rehash(cap, searchingGen);
+            return old - size;
+        }
+
+        /**
+         * Copies all entries with a generation greater than searchingGen into new arrays. Linear
+         * probing does not allow to simply null a slot, so this is also how entries are removed.
+         */
+        private void rehash(int newCap, long searchingGen) {
+            long[] oldIds = ids;
+            long[] oldGens = gens;
+            Document[] oldDocs = docs;
+            allocate(newCap);
+            for (int i = 0; i < oldDocs.length; i++) {
+                if (oldDocs[i] != null && oldGens[i] > searchingGen)
+                    put(oldIds[i], oldDocs[i], oldGens[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+
+/**
+ * Resolves a numeric id (indexed as LongField) to the docID within one segment via an in-memory
+ * table. The table is created once per segment core and so it survives NRT reopens - only new
+ * segments need to be loaded. Deleted documents are filtered at lookup time via the live docs of
+ * the passed reader.
+ *
+ * The table is a sorted array of the ids with a parallel array of the docIDs, so it needs 12 bytes
+ * per document and a lookup is a binary search.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class SegmentIdResolver {
+
+    private final String idField;
+    // segment core -> (id -> docID), entries vanish when merged segments are garbage collected
+    private final Map<Object, IdTable> cache = Collections.synchronizedMap(new WeakHashMap<Object, IdTable>());
+
+    public SegmentIdResolver(String idField) {
+        this.idField = idField;
+    }
+
+    /**
+     * @return the docID relative to the specified segment or -1 if the id is not available or
+     * deleted
+     */
+    public int getDocId(AtomicReader reader, long id) throws IOException {
+        int docID = getTable(reader).get(id);
+        if (docID < 0)
+            return -1;
+
+        Bits liveDocs = reader.getLiveDocs();
+        if (liveDocs != null && !liveDocs.get(docID))
+            return -1;
+        return docID;
+    }
+
+    IdTable getTable(AtomicReader reader) throws IOException {
+        Object key = reader.getCoreCacheKey();
+        IdTable table = cache.get(key);
+        if (table == null) {
+            // concurrent creation for the same segment is harmless
+            table = createTable(reader);
+            cache.put(key, table);
+        }
+        return table;
+    }
+
+    private IdTable createTable(AtomicReader reader) throws IOException {
+        Terms terms = reader.terms(idField);
+        if (terms == null)
+            return new IdTable(new long[0], new int[0], 0);
+
+        long[] ids = new long[reader.maxDoc()];
+        int[] docIDs = new int[reader.maxDoc()];
+        int size = 0;
+        TermsEnum te = terms.iterator(null);
+        DocsEnum docs = null;
+        BytesRef term;
+        while ((term = te.next()) != null) {
+            // full precision terms are sorted before the lower precision terms
+            if (NumericUtils.getPrefixCodedLongShift(term) > 0)
+                break;
+
+            // the prefix coded terms are in the order of the longs, so ids stays sorted
+            long id = NumericUtils.prefixCodedToLong(term);
+            // do not skip deleted docs here as the live docs change for the same core.
+            // Within a segment the newest doc has the highest docID and only it can be live
+            docs = te.docs(null, docs, false);
+            int last = -1;
+            int docID;
+            while ((docID = docs.nextDoc()) != DocsEnum.NO_MORE_DOCS) {
+                last = docID;
+            }
+            if (last < 0)
+                continue;
+            ids[size] = id;
+            docIDs[size] = last;
+            size++;
+        }
+        return new IdTable(ids, docIDs, size);
+    }
+
+    static class IdTable {
+
+        private final long[] ids;
+        private final int[] docIDs;
+        private final int size;
+
+        IdTable(long[] ids, int[] docIDs, int size) {
+            this.ids = ids;
+            this.docIDs = docIDs;
+            this.size = size;
+        }
+
+        /**
+         * @return the highest docID of the id or -1
+         */
+        int get(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            return index < 0 ? -1 : docIDs[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    public int getCachedSegments() {
+        return cache.size();
+    }
+}
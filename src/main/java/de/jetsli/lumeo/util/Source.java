@@ -0,0 +1,309 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * All properties of an element in one binary blob (same as the _source field in ElasticSearch).
+ * Every entry is encoded as [vint key length][key utf8][type byte][value] where strings are length
+ * prefixed and numbers have a fixed length. So get(key) can skip all other values without decoding
+ * them. Only a modification decodes the complete source. Not thread safe.
+ *
+ * @author Peter Karich, info@jetsli.de
+ */
+public class Source {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    static final byte STRING = 0;
+    static final byte LONG = 1;
+    static final byte INT = 2;
+    static final byte DOUBLE = 3;
+    static final byte FLOAT = 4;
+    static final byte BOOLEAN = 5;
+    static final byte DATE = 6;
+    private byte[] bytes;
+    private int offset;
+    private int length;
+    // null until modified
+    private Map<String, Object> map;
+
+    public Source() {
+        map = new LinkedHashMap<String, Object>();
+    }
+
+    public Source(BytesRef ref) {
+        if (ref == null)
+            map = new LinkedHashMap<String, Object>();
+        else {
+            bytes = ref.bytes;
+            offset = ref.offset;
+            length = ref.length;
+        }
+    }
+
+    public Object get(String key) {
+        if (map != null)
+            return map.get(key);
+
+        byte[] keyBytes = key.getBytes(UTF8);
+        Cursor c = new Cursor(bytes, offset);
+        int end = offset + length;
+        while (c.pos < end) {
+            int keyLength = c.readVInt();
+            boolean found = keyLength == keyBytes.length && equals(keyBytes, bytes, c.pos);
+            c.pos += keyLength;
+            byte type = bytes[c.pos++];
+            if (found)
+                return c.readValue(type);
+            c.skipValue(type);
+        }
+        return null;
+    }
+
+    private static boolean equals(byte[] key, byte[] b, int pos) {
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != b[pos + i])
+                return false;
+        }
+        return true;
+    }
+
+    public Set<String> keys() {
+        if (map != null)
+            return Collections.unmodifiableSet(map.keySet());
+
+        Set<String> keys = new LinkedHashSet<String>();
+        Cursor c = new Cursor(bytes, offset);
+        int end = offset + length;
+        while (c.pos < end) {
+            keys.add(c.readString());
+            c.skipValue(bytes[c.pos++]);
+        }
+        return keys;
+    }
+
+    public boolean isEmpty() {
+        if (map != null)
+            return map.isEmpty();
+        return length == 0;
+    }
+
+    public Object put(String key, Object value) {
+        if (value == null)
+            throw new IllegalArgumentException("Value must not be null:" + key);
+        return asMap().put(key, value);
+    }
+
+    public Object remove(String key) {
+        return asMap().remove(key);
+    }
+
+    /**
+     * Decodes all properties. Modifications of the returned map are reflected in toBytes.
+     */
+    public Map<String, Object> asMap() {
+        if (map == null) {
+            Map<String, Object> tmp = new LinkedHashMap<String, Object>();
+            Cursor c = new Cursor(bytes, offset);
+            int end = offset + length;
+            while (c.pos < end) {
+                String key = c.readString();
+                tmp.put(key, c.readValue(bytes[c.pos++]));
+            }
+            map = tmp;
+            bytes = null;
+        }
+        return map;
+    }
+
+    public BytesRef toBytes() {
+        if (map == null)
+            return new BytesRef(bytes, offset, length);
+
+        Writer w = new Writer();
+        for (Map.Entry<String, Object> e : map.entrySet()) {
+            w.writeBytes(e.getKey().getBytes(UTF8));
+            w.writeValue(e.getValue());
+        }
+        return new BytesRef(w.bytes, 0, w.pos);
+    }
+
+    @Override public String toString() {
+        return asMap().toString();
+    }
+
+    private static class Cursor {
+
+        final byte[] b;
+        int pos;
+
+        Cursor(byte[] b, int pos) {
+            this.b = b;
+            this.pos = pos;
+        }
+
+        int readVInt() {
+            byte tmp = b[pos++];
+            int i = tmp & 0x7F;
+            for (int shift = 7; (tmp & 0x80) != 0; shift += 7) {
+                tmp = b[pos++];
+                i |= (tmp & 0x7F) << shift;
+            }
+            return i;
+        }
+
+        int readInt() {
+            return ((b[pos++] & 0xFF) << 24) | ((b[pos++] & 0xFF) << 16)
+                    | ((b[pos++] & 0xFF) << 8) | (b[pos++] & 0xFF);
+        }
+
+        long readLong() {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        String readString() {
+            int len = readVInt();
+            String str = new String(b, pos, len, UTF8);
+            pos += len;
+            return str;
+        }
+
+        Object readValue(byte type) {
+            switch (type) {
+                case STRING:
+                    return readString();
+                case LONG:
+                    return readLong();
+                case INT:
+                    return readInt();
+                case DOUBLE:
+                    return Double.longBitsToDouble(readLong());
+                case FLOAT:
+                    return Float.intBitsToFloat(readInt());
+                case BOOLEAN:
+                    return b[pos++] != 0;
+                case DATE:
+                    return new Date(readLong());
+                default:
+                    throw new IllegalStateException("Unknown type " + type + " in source");
+            }
+        }
+
+        void skipValue(byte type) {
+            switch (type) {
+                case STRING:
+                    int len = readVInt();
+                    pos += len;
+                    break;
+                case LONG:
+                case DOUBLE:
+                case DATE:
+                    pos += 8;
+                    break;
+                case INT:
+                case FLOAT:
+                    pos += 4;
+                    break;
+                case BOOLEAN:
+                    pos++;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown type " + type + " in source");
+            }
+        }
+    }
+
+    private static class Writer {
+
+        byte[] bytes = new byte[64];
+        int pos;
+
+        void ensure(int additional) {
+            if (pos + additional > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, pos + additional));
+        }
+
+        void writeVInt(int i) {
+            ensure(5);
+            while ((i & ~0x7F) != 0) {
+                bytes[pos++] = (byte) ((i & 0x7F) | 0x80);
+                i >>>= 7;
+            }
+            bytes[pos++] = (byte) i;
+        }
+
+        void writeBytes(byte[] b) {
+            writeVInt(b.length);
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, pos, b.length);
+            pos += b.length;
+        }
+
+        void writeInt(int i) {
+            ensure(4);
+            bytes[pos++] = (byte) (i >> 24);
+            bytes[pos++] = (byte) (i >> 16);
+            bytes[pos++] = (byte) (i >> 8);
+            bytes[pos++] = (byte) i;
+        }
+
+        void writeLong(long l) {
+            writeInt((int) (l >> 32));
+            writeInt((int) l);
+        }
+
+        void writeType(byte type) {
+            ensure(1);
+            bytes[pos++] = type;
+        }
+
+        void writeValue(Object o) {
+            if (o instanceof Long) {
+                writeType(LONG);
+                writeLong((Long) o);
+            } else if (o instanceof Integer) {
+                writeType(INT);
+                writeInt((Integer) o);
+            } else if (o instanceof Double) {
+                writeType(DOUBLE);
+                writeLong(Double.doubleToLongBits((Double) o));
+            } else if (o instanceof Float) {
+                writeType(FLOAT);
+                writeInt(Float.floatToIntBits((Float) o));
+            } else if (o instanceof Boolean) {
+                writeType(BOOLEAN);
+                ensure(1);
+                bytes[pos++] = (byte) (((Boolean) o) ? 1 : 0);
+            } else if (o instanceof Date) {
+                writeType(DATE);
+                writeLong(((Date) o).getTime());
+            } else {
+                // same as for not mapped fields: store the string representation
+                writeType(STRING);
+                writeBytes(o.toString().getBytes(UTF8));
+            }
+        }
+    }
+}
@@ -20,6 +20,8 @@ import java.io.IOException;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
@@ -32,6 +34,8 @@ import org.apache.lucene.util.FixedBitSet;
  */
 public class TermFilter extends Filter {
 
+    // an int array is smaller than a bitset if less than 1/32 of the docs match
+    static final int SPARSE_SHIFT = 5;
     private String fieldName;
     private BytesRef bytes;
 
@@ -42,15 +46,34 @@ public class TermFilter extends Filter {
         this.fieldName = fieldName;
     }
     
+    /**
+     * Returns a sorted docID array for rare terms (e.g. the edges of one vertex) and a bitset for
+     * frequent terms. So the allocated memory is bound by the number of matching docs.
+     */
     @Override
-    public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {        
+    public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
         AtomicReader reader = context.reader();
-        FixedBitSet result = new FixedBitSet(reader.maxDoc());
-        DocsEnum de = reader.termDocsEnum(acceptDocs, fieldName, bytes, false);
-        if(de == null)
-            return result;
-        
+        Terms terms = reader.terms(fieldName);
+        if (terms == null)
+            return DocIdSet.EMPTY_DOCIDSET;
+        TermsEnum te = terms.iterator(null);
+        if (!te.seekExact(bytes, false))
+            return DocIdSet.EMPTY_DOCIDSET;
+
+        // docFreq includes deleted docs, so it is an upper bound
+        int docFreq = te.docFreq();
+        DocsEnum de = te.docs(acceptDocs, null, false);
         int id;
+        if (docFreq <= reader.maxDoc() >>> SPARSE_SHIFT) {
+            int[] docs = new int[docFreq];
+            int size = 0;
+            while ((id = de.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                docs[size++] = id;
+            }
+            return new IntArrayDocIdSet(docs, size);
+        }
+
+        FixedBitSet result = new FixedBitSet(reader.maxDoc());
         while ((id = de.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
             result.set(id);
         }
@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo;
+
+import com.tinkerpop.blueprints.pgm.Edge;
+import com.tinkerpop.blueprints.pgm.Vertex;
+import de.jetsli.lumeo.util.Helper;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich, info@jetsli.de
+ */
+public class BulkLoaderTest extends SimpleLuceneTestBase {
+
+    @Test public void testLoad() {
+        g.createAutomaticIndex("vertices", Vertex.class, Helper.set("name"));
+        BulkLoader loader = new BulkLoader(g, 2).setBatchSize(3);
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("name", "Peter");
+        long peter = loader.addVertex("peter", props);
+        long last = peter;
+        for (int i = 0; i < 10; i++) {
+            long id = loader.addVertex(null);
+            loader.addEdge(null, last, id, "knows");
+            last = id;
+        }
+        loader.close();
+
+        assertEquals(11, g.count(Vertex.class, RawLucene.TYPE, Vertex.class.getSimpleName()));
+        assertEquals(10, g.count(Edge.class, RawLucene.TYPE, Edge.class.getSimpleName()));
+
+        Vertex v = g.getVertex("peter");
+        assertEquals(peter, v.getId());
+        assertEquals("Peter", v.getProperty("name"));
+        assertCount(1, g.getIndex("vertices", Vertex.class).get("name", "peter"));
+        Edge e = v.getOutEdges().iterator().next();
+        assertEquals("knows", e.getLabel());
+        assertEquals(v, e.getOutVertex());
+
+        try {
+            loader.addVertex(null);
+            assertTrue("closed loader should throw an exception", false);
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    @Test public void testCloseAfterFailure() {
+        BulkLoader loader = new BulkLoader(g, 2).setBatchSize(3);
+        loader.addVertex(null);
+        loader.fail(new RuntimeException("worker failed"));
+        try {
+            loader.close();
+            assertTrue("failure of a worker should be thrown", false);
+        } catch (RuntimeException ex) {
+            assertEquals("worker failed", ex.getCause().getMessage());
+        }
+        assertTrue(loader.isTerminated());
+    }
+}
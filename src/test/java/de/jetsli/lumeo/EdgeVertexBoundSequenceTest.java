@@ -57,6 +57,19 @@ public class EdgeVertexBoundSequenceTest extends SimpleLuceneTestBase {
         assertFalse(eSeq.hasNext());
     }
 
+    @Test public void testAddEdgeDoesNotTouchVertices() {
+        Vertex v1 = g.addVertex("peter");
+        Vertex v2 = g.addVertex("timetabling");
+        int fields = ((LuceneVertex) v1).getRaw().getFields().size();
+        g.addEdge("idEdge", v1, v2, "twitteraccount");
+        assertEquals(fields, ((LuceneVertex) v1).getRaw().getFields().size());
+        refresh();
+
+        assertCount(1, new EdgeVertexBoundSequence(g, (LuceneVertex) v1, RawLucene.EDGE_OUT));
+        assertCount(1, new EdgeVertexBoundSequence(g, (LuceneVertex) v2, RawLucene.EDGE_IN));
+        assertCount(0, new EdgeVertexBoundSequence(g, (LuceneVertex) v2, RawLucene.EDGE_OUT));
+    }
+
     @Test public void testSequenceWithLabels() {
         Vertex v1 = g.addVertex("peter");
         Vertex v2 = g.addVertex("timetabling");
@@ -75,6 +88,20 @@ public class EdgeVertexBoundSequenceTest extends SimpleLuceneTestBase {
         eSeq = new EdgeVertexBoundSequence(g, (LuceneVertex) v1).setLabels("twitteraccounting");
         assertCount(1, eSeq);
     }
+
+    @Test public void testLabelsAreCaseSensitive() {
+        Vertex v1 = g.addVertex("peter");
+        Vertex v2 = g.addVertex("timetabling");
+        g.addEdge("idEdge", v1, v2, "Knows");
+        g.addEdge("idEdge2", v1, v2, "knows");
+        refresh();
+
+        EdgeVertexBoundSequence eSeq = new EdgeVertexBoundSequence(g, (LuceneVertex) v1, RawLucene.EDGE_OUT).setLabels("Knows");
+        assertCount(1, eSeq);
+        eSeq = new EdgeVertexBoundSequence(g, (LuceneVertex) v1, RawLucene.EDGE_OUT).setLabels("Knows", "knows");
+        assertCount(2, eSeq);
+        assertEquals(1, ((LuceneVertex) v1).getOutDegree("knows"));
+    }
     
     @Test public void testCaseInsensitive() {
         g.createAutomaticIndex("tmp", Edge.class, Helper.set("name"));
@@ -0,0 +1,142 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo;
+
+import com.tinkerpop.blueprints.pgm.Edge;
+import com.tinkerpop.blueprints.pgm.Vertex;
+import de.jetsli.lumeo.util.Helper;
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich, info@jetsli.de
+ */
+public class GraphSnapshotTest extends SimpleLuceneTestBase {
+
+    @Test public void testSnapshot() {
+        Vertex v1 = g.addVertex("peter");
+        Vertex v2 = g.addVertex("timetabling");
+        Vertex v3 = g.addVertex("jetslideapp");
+        g.addEdge("e1", v1, v2, "knows");
+        g.addEdge("e2", v1, v3, "likes");
+        g.addEdge("e3", v3, v1, "knows");
+        refresh();
+
+        GraphSnapshot s = g.getSnapshot();
+        assertEquals(3, s.getVertexCount());
+        assertEquals(3, s.getEdgeCount());
+        assertSame(s, g.getSnapshot());
+
+        int index = s.indexOf((Long) v1.getId());
+        assertEquals(2, s.getOutDegree(index));
+        assertEquals(1, s.getInDegree(index));
+        assertEquals(v3.getId(), s.getInTarget(s.inStart(index)));
+        assertEquals("knows", s.getLabel(s.getInLabel(s.inStart(index))));
+        assertEquals(-1, s.indexOf(1000L));
+        assertEquals(-1, s.getLabelOrdinal("unknown"));
+
+        g.addEdge("e4", v2, v3, "knows");
+        refresh();
+        GraphSnapshot s2 = g.getSnapshot();
+        assertNotSame(s, s2);
+        assertEquals(1, s2.getOutDegree(s2.indexOf((Long) v2.getId())));
+    }
+
+    @Test public void testMappedFile() {
+        File dir = new File("target/test-snapshot");
+        Helper.deleteDir(dir);
+        dir.mkdirs();
+        g.setSnapshotDir(dir);
+        Vertex v1 = g.addVertex("peter");
+        g.addEdge("e1", v1, g.addVertex("timetabling"), "knows");
+        refresh();
+
+        GraphSnapshot s = g.getSnapshot();
+        assertEquals(1, dir.listFiles().length);
+        g.addVertex("jetslideapp");
+        refresh();
+        GraphSnapshot s2 = g.getSnapshot();
+        assertEquals(3, s2.getVertexCount());
+        // the old file is removed but still readable
+        assertEquals(1, dir.listFiles().length);
+        assertEquals(1, s.getOutDegree(s.indexOf((Long) v1.getId())));
+        g.shutdown();
+        assertEquals(0, dir.listFiles().length);
+        g = null;
+        Helper.deleteDir(dir);
+    }
+
+    @Test public void testTraversal() {
+        g.setSnapshotTraversal(true);
+        g.createAutomaticIndex("edge", Edge.class, Helper.set("since"));
+        Vertex v1 = g.addVertex("peter");
+        v1.setProperty("name", "Peter");
+        Vertex v2 = g.addVertex("timetabling");
+        v2.setProperty("name", "Timetabling");
+        Vertex v3 = g.addVertex("jetslideapp");
+        Edge e1 = g.addEdge("e1", v1, v2, "knows");
+        e1.setProperty("since", "2011");
+        g.addEdge("e2", v1, v3, "likes");
+        g.addEdge("e3", v3, v1, "knows");
+        refresh();
+
+        EdgeVertexBoundSequence seq = new EdgeVertexBoundSequence(g, (LuceneVertex) v1, RawLucene.EDGE_OUT);
+        seq.setLabels("knows");
+        assertTrue(seq.hasNext());
+        LuceneEdge e = (LuceneEdge) seq.next();
+        assertFalse(seq.hasNext());
+        seq.close();
+        assertTrue(e.isPartial());
+        assertEquals(e1.getId(), e.getId());
+        assertEquals("knows", e.getLabel());
+        assertEquals("2011", e.getProperty("since"));
+
+        LuceneVertex in = (LuceneVertex) e.getInVertex();
+        assertTrue(in.isPartial());
+        assertEquals(v2.getId(), in.getId());
+        // the header from the snapshot has no user id, it is loaded on demand
+        assertNull(in.getRaw().get(RawLucene.UID));
+        assertEquals("timetabling", in.getProperty(RawLucene.UID));
+        assertEquals("Timetabling", in.getProperty("name"));
+        assertEquals(v1.getId(), e.getOutVertex().getId());
+
+        assertCount(2, (EdgeVertexBoundSequence) v1.getOutEdges());
+        assertCount(1, (EdgeVertexBoundSequence) v1.getInEdges());
+        assertCount(2, (EdgeVertexBoundSequence) v1.getOutEdges("knows", "likes"));
+        assertCount(0, (EdgeVertexBoundSequence) v1.getOutEdges("unknown"));
+        assertCount(0, (EdgeVertexBoundSequence) v2.getOutEdges());
+
+        // restricted sequences search the index
+        assertCount(1, new EdgeVertexBoundSequence(g, (LuceneVertex) v1, RawLucene.EDGE_OUT).setValue("since", "2011"));
+
+        // newer edges are read after the snapshot is recreated
+        GraphSnapshot s = g.getSnapshot();
+        g.addEdge("e4", v2, v3, "knows");
+        refresh();
+        assertCount(1, (EdgeVertexBoundSequence) v2.getOutEdges());
+        assertNotSame(s, g.getSnapshot());
+
+        // removed vertices are not taken from the snapshot
+        g.removeVertex(v3);
+        refresh();
+        try {
+            g.getEdge("e4").getInVertex();
+            fail("in vertex was removed");
+        } catch (NullPointerException ex) {
+        }
+    }
+}
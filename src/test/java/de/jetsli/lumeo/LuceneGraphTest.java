@@ -19,8 +19,11 @@ import org.apache.lucene.document.Document;
 import de.jetsli.lumeo.util.Helper;
 import com.tinkerpop.blueprints.pgm.AutomaticIndex;
 import com.tinkerpop.blueprints.pgm.CloseableSequence;
+import com.tinkerpop.blueprints.pgm.Edge;
 import com.tinkerpop.blueprints.pgm.Vertex;
 import org.apache.lucene.document.TextField;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -111,6 +114,46 @@ public class LuceneGraphTest extends SimpleLuceneTestBase {
         assertCount(1, new EdgeFilterSequence(g));
     }
 
+    @Test public void testConcurrentAddEdge() throws Exception {
+        final Vertex hub = g.addVertex("hub");
+        final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+
+                @Override public void run() {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            g.addEdge(null, hub, g.addVertex(null), "knows");
+                        }
+                    } catch (Throwable ex) {
+                        errors.add(ex);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread th : threads) {
+            th.join();
+        }
+        assertEquals(0, errors.size());
+        refresh();
+        assertEquals(200, g.count(Edge.class, RawLucene.TYPE, Edge.class.getSimpleName()));
+        assertCount(200, new EdgeFilterSequence(g));
+        assertEquals(201, g.count(Vertex.class, RawLucene.TYPE, Vertex.class.getSimpleName()));
+    }
+
+    @Test public void testGetVertices() {
+        Vertex v1 = g.addVertex("peter");
+        Vertex v2 = g.addVertex("karl");
+        refresh();
+        List<Vertex> list = g.getVertices("karl", "unknown", "peter");
+        assertEquals(3, list.size());
+        assertEquals(v2, list.get(0));
+        assertNull(list.get(1));
+        assertEquals(v1, list.get(2));
+    }
+
     @Test public void testDeleteVertex() {
         Vertex v = g.addVertex("peter");
         refresh();
@@ -121,6 +164,116 @@ public class LuceneGraphTest extends SimpleLuceneTestBase {
         assertCount(0, new VertexFilterSequence(g));
     }
 
+    @Test public void testPropertiesFromSource() {
+        g.createAutomaticIndex("vertex", Vertex.class, Helper.set("name", "age,LONG"));
+        Vertex v = g.addVertex("peter");
+        v.setProperty("name", "Peter");
+        v.setProperty("age", 31L);
+        v.setProperty("weight", 0.75);
+        refresh();
+
+        Vertex loaded = g.getVertex("peter");
+        assertEquals("Peter", loaded.getProperty("name"));
+        assertEquals(31L, loaded.getProperty("age"));
+        assertEquals(0.75, loaded.getProperty("weight"));
+        assertTrue(loaded.getPropertyKeys().contains("weight"));
+
+        // reindexing a loaded element must keep the indexed fields
+        loaded.removeProperty("weight");
+        refresh();
+        assertCount(1, g.getIndex("vertex", Vertex.class).get("name", "peter"));
+        assertCount(1, g.getVertices());
+        assertNull(g.getVertex("peter").getProperty("weight"));
+        assertEquals(31L, g.getVertex("peter").getProperty("age"));
+
+        try {
+            loaded.setProperty("name", null);
+            fail("null must be rejected");
+        } catch (IllegalArgumentException ex) {
+        }
+        // the element is still saveable
+        loaded.setProperty("name", "Pete");
+        refresh();
+        assertEquals("Pete", g.getVertex("peter").getProperty("name"));
+    }
+
+    @Test public void testDegree() {
+        LuceneVertex v1 = (LuceneVertex) g.addVertex("peter");
+        LuceneVertex v2 = (LuceneVertex) g.addVertex("timetabling");
+        LuceneVertex v3 = (LuceneVertex) g.addVertex("jetslideapp");
+        g.addEdge("e1", v1, v2, "knows");
+        Edge e2 = g.addEdge("e2", v1, v3, "likes");
+        g.addEdge("e3", v3, v1, "knows");
+
+        // only in the realtime cache
+        assertEquals(2, v1.getOutDegree());
+        assertEquals(1, v1.getInDegree());
+        assertEquals(1, v1.getOutDegree("likes"));
+
+        refresh();
+        assertEquals(2, v1.getOutDegree());
+        assertEquals(1, v1.getOutDegree("knows"));
+        assertEquals(2, v1.getOutDegree("knows", "likes"));
+        assertEquals(0, v1.getOutDegree("unknown"));
+        assertEquals(1, v3.getInDegree());
+        assertEquals(0, v2.getOutDegree());
+
+        // deleted but not yet searchable
+        g.removeEdge(e2);
+        assertEquals(1, v1.getOutDegree());
+        assertEquals(0, v3.getInDegree());
+
+        refresh();
+        assertEquals(1, v1.getOutDegree());
+        assertEquals(0, v1.getOutDegree("likes"));
+        assertEquals(1, v3.getOutDegree("knows"));
+
+        // an indexed edge updated in the realtime cache is counted once
+        g.getEdge("e1").setProperty("since", "2011");
+        v1.setProperty("name", "Peter");
+        assertEquals(1, v1.getOutDegree());
+        assertEquals(1, v1.getOutDegree("knows"));
+        assertEquals(0, v1.getOutDegree("likes"));
+        assertEquals(1, v2.getInDegree());
+    }
+
+    @Test public void testPartialLoading() {
+        Vertex v1 = g.addVertex("peter");
+        v1.setProperty("name", "Peter");
+        Vertex v2 = g.addVertex("timetabling");
+        v2.setProperty("name", "Timetabling");
+        g.addEdge("e1", v1, v2, "knows");
+        refresh();
+
+        LuceneVertex in = (LuceneVertex) g.getEdge("e1").getInVertex();
+        assertTrue(in.isPartial());
+        assertNull(in.getRaw().get(RawLucene.SOURCE));
+        assertEquals(v2.getId(), in.getId());
+        assertEquals("Timetabling", in.getProperty("name"));
+        assertFalse(in.isPartial());
+
+        VertexFilterSequence seq = new VertexFilterSequence(g);
+        seq.setFields(RawLucene.HEADER_FIELDS);
+        LuceneVertex v = (LuceneVertex) seq.next();
+        seq.close();
+        assertTrue(v.isPartial());
+
+        // saving a partial vertex must keep the properties
+        v.setProperty("age", 31L);
+        refresh();
+        Vertex loaded = g.getVertex(v.getProperty(RawLucene.UID));
+        assertEquals(31L, loaded.getProperty("age"));
+        assertNotNull(loaded.getProperty("name"));
+
+        // a vertex without properties from the realtime cache is already complete
+        Vertex v3 = g.addVertex("empty");
+        Edge e2 = g.addEdge("e2", v1, v3, "knows");
+        LuceneVertex cached = (LuceneVertex) e2.getInVertex();
+        assertFalse(cached.isPartial());
+        assertNull(cached.getProperty("name"));
+        assertFalse(cached.isPartial());
+    }
+
 //    @Test public void testRangeQueries() {
 //        AutomaticIndex<Vertex> index = g.createAutomaticIndex("vertex", Vertex.class, Helper.set("time,LONG"));
 //        Vertex v = g.addVertex("peter");
@@ -20,6 +20,9 @@ import com.tinkerpop.blueprints.pgm.Edge;
 import com.tinkerpop.blueprints.pgm.CloseableSequence;
 import com.tinkerpop.blueprints.pgm.Index;
 import com.tinkerpop.blueprints.pgm.Vertex;
+import java.util.Date;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -41,6 +44,130 @@ public class LuceneIndexTest extends SimpleLuceneTestBase {
         seq.close();
     }
 
+    @Test public void testFullTextAndFilters() {
+        Index<Vertex> index = g.createAutomaticIndex("vertices", Vertex.class, Helper.set("name", "desc,TEXT"));
+        Vertex v1 = g.addVertex(null);
+        v1.setProperty("name", "peter");
+        v1.setProperty("desc", "lucene meets graph");
+        Vertex v2 = g.addVertex(null);
+        v2.setProperty("name", "karl");
+        v2.setProperty("desc", "graph database with lucene graph traversal");
+        Vertex v3 = g.addVertex(null);
+        v3.setProperty("name", "peter");
+        refresh();
+
+        assertCount(2, index.get("name", "peter"));
+        assertEquals(2, index.count("name", "peter"));
+        assertCount(2, index.get("desc", "lucene"));
+
+        LuceneFilterSequence<Vertex> seq = new VertexFilterSequence(g).setValue("desc", "graph").setRanked(1);
+        assertEquals(v2, seq.next());
+        assertFalse(seq.hasNext());
+        seq.close();
+
+        g.removeVertex(v3);
+        refresh();
+        assertCount(1, index.get("name", "peter"));
+        assertEquals(1, index.count("name", "peter"));
+    }
+
+    @Test public void testCachedLookups() {
+        Index<Vertex> index = g.createAutomaticIndex("vertices", Vertex.class, Helper.set("status", "desc,TEXT"));
+        Vertex v1 = g.addVertex(null);
+        v1.setProperty("status", "active");
+        v1.setProperty("desc", "lucene graph");
+        refresh();
+        assertCount(1, index.get("status", "active"));
+
+        BytesRef bytes = g.getMapping(Vertex.class).toBytes("status", "active");
+        assertSame(g.getRaw().getTermFilter("status", bytes), g.getRaw().getTermFilter("status", bytes));
+        Query q = g.getMapping(Vertex.class).getQuery("desc", "graph");
+        assertEquals(q, g.getMapping(Vertex.class).getQuery("desc", "graph"));
+        // a modified query must not change the cached one
+        q.setBoost(2f);
+        assertEquals(1f, g.getMapping(Vertex.class).getQuery("desc", "graph").getBoost(), 1e-6);
+
+        // a new segment and deletions must be visible to the cached filter
+        Vertex v2 = g.addVertex(null);
+        v2.setProperty("status", "active");
+        refresh();
+        assertCount(2, index.get("status", "active"));
+        g.removeVertex(v1);
+        refresh();
+        assertCount(1, index.get("status", "active"));
+        v2.setProperty("status", "inactive");
+        refresh();
+        assertCount(0, index.get("status", "active"));
+        assertCount(1, index.get("status", "inactive"));
+    }
+
+    @Test public void testRange() {
+        LuceneAutomaticIndex<Edge> index = (LuceneAutomaticIndex<Edge>) g.createAutomaticIndex("edges",
+                Edge.class, Helper.set("weight,LONG", "created,DATE"));
+        Vertex v1 = g.addVertex(null);
+        Vertex v2 = g.addVertex(null);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            Edge e = g.addEdge(null, v1, v2, "knows");
+            e.setProperty("weight", (long) i * 100);
+            e.setProperty("created", new Date(now - i * 60 * 1000L));
+        }
+        refresh();
+
+        assertCount(3, index.range("weight", 200L, 400L));
+        assertCount(3, index.range("weight", 200, 450));
+        assertCount(2, index.range("weight", null, 100L));
+        assertCount(1, index.range("weight", 900L, null));
+        assertCount(0, index.range("weight", 901L, 2000L));
+        assertCount(1, index.get("weight", 300L));
+
+        // edges of the last 5 minutes
+        assertCount(6, index.range("created", new Date(now - 5 * 60 * 1000L), null));
+        assertCount(1, index.get("created", new Date(now)));
+
+        try {
+            index.range("unknown", 1L, 2L);
+            assertTrue(false);
+        } catch (UnsupportedOperationException ex) {
+        }
+    }
+
+    @Test public void testDouble() {
+        LuceneAutomaticIndex<Edge> index = (LuceneAutomaticIndex<Edge>) g.createAutomaticIndex("edges",
+                Edge.class, Helper.set("weight,DOUBLE"));
+        Vertex v1 = g.addVertex(null);
+        Vertex v2 = g.addVertex(null);
+        double[] weights = {0.5, -1.25, 3, 0.75, -0.5};
+        for (double w : weights) {
+            g.addEdge(null, v1, v2, "knows").setProperty("weight", w);
+        }
+        // no weight
+        g.addEdge(null, v1, v2, "knows");
+        refresh();
+        // a second segment
+        g.addEdge(null, v2, v1, "knows").setProperty("weight", 1.5);
+        refresh();
+
+        assertCount(1, index.get("weight", 0.75));
+        assertCount(1, index.get("weight", 3));
+        assertCount(3, index.range("weight", -0.5, 1.0));
+        assertCount(2, index.range("weight", null, -0.5));
+        assertCount(2, index.range("weight", 1.0, null));
+
+        LuceneFilterSequence<Edge> seq = new EdgeFilterSequence(g).setRange("weight", -1.0, null).
+                setSorted("weight", true, 3);
+        assertEquals(3.0, seq.next().getProperty("weight"));
+        assertEquals(1.5, seq.next().getProperty("weight"));
+        assertEquals(0.75, seq.next().getProperty("weight"));
+        assertFalse(seq.hasNext());
+        seq.close();
+
+        seq = new EdgeFilterSequence(g).setRange("weight", null, null).setSorted("weight", false, 10);
+        assertEquals(-1.25, seq.next().getProperty("weight"));
+        assertEquals(-0.5, seq.next().getProperty("weight"));
+        seq.close();
+    }
+
     @Test public void testPutEdge() {
         Index<Edge> index = g.createAutomaticIndex("keyword", Edge.class, Helper.set("name"));
         Vertex v1 = g.addVertex(null);        
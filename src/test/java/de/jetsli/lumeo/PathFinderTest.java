@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo;
+
+import com.tinkerpop.blueprints.pgm.Vertex;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich, info@jetsli.de
+ */
+public class PathFinderTest extends SimpleLuceneTestBase {
+
+    long id(Vertex v) {
+        return (Long) v.getId();
+    }
+
+    @Test public void testShortestPath() {
+        // a chain 0 -> 1 -> 2 -> 3 -> 4 -> 5 with a shortcut 1 -> 4
+        Vertex[] v = new Vertex[6];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = g.addVertex("v" + i);
+            if (i > 0)
+                g.addEdge(null, v[i - 1], v[i], "next");
+        }
+        g.addEdge(null, v[1], v[4], "jump");
+        refresh();
+
+        assertArrayEquals(new long[]{id(v[0]), id(v[1]), id(v[4]), id(v[5])}, g.shortestPath(id(v[0]), id(v[5]), 10));
+        assertArrayEquals(new long[]{id(v[0]), id(v[1]), id(v[2]), id(v[3]), id(v[4]), id(v[5])},
+                g.shortestPath(id(v[0]), id(v[5]), 10, "next"));
+        assertNull(g.shortestPath(id(v[0]), id(v[5]), 4, "next"));
+        assertArrayEquals(new long[]{id(v[0]), id(v[1])}, g.shortestPath(id(v[0]), id(v[1]), 1));
+        assertArrayEquals(new long[]{id(v[2])}, g.shortestPath(id(v[2]), id(v[2]), 0));
+        // edges are directed
+        assertNull(g.shortestPath(id(v[5]), id(v[0]), 10));
+
+        PathFinder pf = g.newPathFinder();
+        assertEquals(4, pf.shortestPath(id(v[0]), id(v[5])).length);
+        assertTrue(pf.getStats().getLevels() > 0);
+        assertTrue(pf.getStats().getTotalExpanded() > 0);
+    }
+
+    @Test public void testBfs() {
+        Vertex peter = g.addVertex("peter");
+        Vertex karl = g.addVertex("karl");
+        Vertex anna = g.addVertex("anna");
+        Vertex lumeo = g.addVertex("lumeo");
+        g.addEdge(null, peter, karl, "knows");
+        g.addEdge(null, peter, anna, "knows");
+        g.addEdge(null, karl, anna, "knows");
+        g.addEdge(null, anna, lumeo, "likes");
+        g.addEdge(null, anna, peter, "knows");
+        refresh();
+
+        long[] ids = g.bfs(id(peter), 10);
+        assertEquals(4, ids.length);
+        assertEquals(id(peter), ids[0]);
+        assertEquals(id(lumeo), ids[3]);
+        assertEquals(3, g.bfs(id(peter), 1).length);
+        assertEquals(3, g.bfs(id(peter), 10, "knows").length);
+        assertEquals(1, g.bfs(id(lumeo), 10).length);
+
+        PathFinder pf = g.newPathFinder().setMaxDepth(2);
+        pf.bfs(id(peter));
+        assertEquals(2, pf.getStats().getLevels());
+        assertEquals(1, pf.getStats().getExpanded(0));
+        assertEquals(2, pf.getStats().getExpanded(1));
+    }
+}
@@ -151,4 +151,101 @@ public class RawLuceneTest extends SimpleLuceneTestBase {
         assertEquals(0, rl.count(Tmp.class, "name", "peter"));
         assertNotNull("UserId 'test' should be available", rl.findByUserId("test"));
     }
+
+    @Test public void testFindByIdReturnsRequestedDoc() {
+        RawLucene rl = g.getRaw();
+        for (int i = 1; i <= 3; i++) {
+            Document doc = rl.createDocument("test" + i, i, Tmp.class);
+            doc.add(m.createField("name", "peter" + i));
+            rl.put("test" + i, i, doc);
+        }
+        refresh();
+        assertEquals("peter2", rl.findById(2).get("name"));
+        assertEquals("peter3", rl.findById(3).get("name"));
+        assertNull(rl.findById(4));
+        assertTrue(rl.exists(1));
+        assertFalse(rl.exists(4));
+
+        Document doc = rl.createDocument("test2", 2, Tmp.class);
+        doc.add(m.createField("name", "different"));
+        rl.put("test2", 2, doc);
+        refresh();
+        assertEquals("different", rl.findById(2).get("name"));
+
+        rl.removeById(2);
+        refresh();
+        assertNull(rl.findById(2));
+        assertFalse(rl.exists(2));
+    }
+
+    @Test public void testFindByIds() {
+        RawLucene rl = g.getRaw();
+        for (int i = 1; i <= 5; i++) {
+            Document doc = rl.createDocument("test" + i, i, Tmp.class);
+            doc.add(m.createField("name", "n" + i));
+            rl.put("test" + i, i, doc);
+        }
+        refresh();
+        rl.removeById(4);
+        // not yet searchable
+        Document doc = rl.createDocument("test6", 6, Tmp.class);
+        doc.add(m.createField("name", "n6"));
+        rl.put("test6", 6, doc);
+
+        Document[] docs = rl.findByIds(5, 1, 4, 6, 100, 3);
+        assertEquals("n5", docs[0].get("name"));
+        assertEquals("n1", docs[1].get("name"));
+        assertNull(docs[2]);
+        assertEquals("n6", docs[3].get("name"));
+        assertNull(docs[4]);
+        assertEquals("n3", docs[5].get("name"));
+        assertEquals(0, rl.findByIds().length);
+
+        docs = rl.findByUserIds("test3", "test100", "test2");
+        assertEquals("n3", docs[0].get("name"));
+        assertNull(docs[1]);
+        assertEquals("n2", docs[2].get("name"));
+        // now from the user id cache
+        docs = rl.findByUserIds("test2", "test3");
+        assertEquals("n2", docs[0].get("name"));
+        assertEquals("n3", docs[1].get("name"));
+    }
+
+    @Test public void testRefreshReleasesRealtimeCache() {
+        RawLucene rl = g.getRaw();
+        rl.put("test", 123, rl.createDocument("test", 123, Tmp.class));
+        rl.removeById(124);
+        assertEquals(2, rl.calcSize());
+        rl.refresh();
+        assertEquals(0, rl.calcSize());
+        assertNotNull(rl.findById(123));
+        assertNull(rl.findById(124));
+    }
+
+    @Test public void testDocumentCache() {
+        RawLucene rl = g.getRaw();
+        Document doc = rl.createDocument("test", 123, Tmp.class);
+        doc.add(m.createField("name", "peter"));
+        rl.put("test", 123, doc);
+        // the refresh releases the document from the realtime cache
+        rl.waitUntilSearchable();
+        assertEquals(0, rl.calcSize());
+
+        long hits = rl.getDocumentCache().getHits();
+        assertEquals("peter", rl.findByUserId("test").get("name"));
+        assertEquals("peter", rl.findById(123).get("name"));
+        assertEquals("peter", rl.findByUserId("test").get("name"));
+        assertEquals("peter", rl.findById(123).get("name"));
+        assertEquals(hits + 2, rl.getDocumentCache().getHits());
+
+        // a write invalidates the cached document
+        doc = rl.createDocument("test", 123, Tmp.class);
+        doc.add(m.createField("name", "different"));
+        rl.put("test", 123, doc);
+        assertEquals("different", rl.findById(123).get("name"));
+        assertEquals("different", rl.findByUserId("test").get("name"));
+
+        rl.removeById(123);
+        assertNull(rl.findById(123));
+    }
 }
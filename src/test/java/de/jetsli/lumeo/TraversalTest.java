@@ -0,0 +1,88 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo;
+
+import com.tinkerpop.blueprints.pgm.Vertex;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich, info@jetsli.de
+ */
+public class TraversalTest extends SimpleLuceneTestBase {
+
+    long id(Vertex v) {
+        return (Long) v.getId();
+    }
+
+    long[] sorted(long[] ids) {
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    @Test public void testHops() {
+        Vertex peter = g.addVertex("peter");
+        Vertex karl = g.addVertex("karl");
+        Vertex anna = g.addVertex("anna");
+        Vertex lumeo = g.addVertex("lumeo");
+        Vertex lucene = g.addVertex("lucene");
+        g.addEdge(null, peter, karl, "knows");
+        g.addEdge(null, peter, anna, "knows");
+        g.addEdge(null, karl, anna, "knows");
+        g.addEdge(null, karl, lumeo, "likes");
+        g.addEdge(null, anna, lucene, "likes");
+        g.addEdge(null, anna, peter, "knows");
+        refresh();
+
+        assertArrayEquals(sorted(new long[]{id(karl), id(anna)}), sorted(g.traverse(id(peter)).out("knows").toIds()));
+        // anna was already reached with the first hop and peter is the start
+        assertArrayEquals(sorted(new long[]{id(lumeo), id(lucene)}),
+                sorted(g.traverse(id(peter)).out("knows").out().neighborhood().toIds()));
+        // back to karl and anna which were visited before
+        assertEquals(0, g.traverse(id(peter)).out("knows").out("likes").in("likes").neighborhood().count());
+
+        // every hop is unique on its own: anna is reached twice but returned once
+        assertArrayEquals(sorted(new long[]{id(peter), id(anna), id(lumeo), id(lucene)}),
+                sorted(g.traverse(id(peter)).out("knows").out().toIds()));
+        assertArrayEquals(sorted(new long[]{id(karl), id(anna)}),
+                sorted(g.traverse(id(peter)).out("knows").out("likes").in("likes").toIds()));
+        assertArrayEquals(sorted(new long[]{id(karl), id(anna)}), sorted(g.traverse(id(lumeo), id(lucene)).in("likes").toIds()));
+        assertEquals(0, g.traverse(id(lumeo)).out().count());
+        assertEquals(1, g.traverse(id(peter)).out("knows").out("likes").limit(1).count());
+
+        int count = 0;
+        for (Vertex v : g.traverse(id(peter)).out("knows")) {
+            assertTrue(v.equals(karl) || v.equals(anna));
+            count++;
+        }
+        assertEquals(2, count);
+    }
+
+    @Test public void testTypedHopsReachVisitedVertices() {
+        Vertex a = g.addVertex("a");
+        Vertex b = g.addVertex("b");
+        Vertex c = g.addVertex("c");
+        g.addEdge(null, a, b, "knows");
+        g.addEdge(null, b, c, "likes");
+        g.addEdge(null, a, c, "knows");
+        refresh();
+
+        // c was reached with the first hop but is also liked by b
+        assertArrayEquals(new long[]{id(c)}, g.traverse(id(a)).out("knows").out("likes").toIds());
+        assertEquals(0, g.traverse(id(a)).out("knows").out("likes").neighborhood().count());
+    }
+}
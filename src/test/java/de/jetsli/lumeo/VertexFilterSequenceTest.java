@@ -15,6 +15,20 @@
  */
 package de.jetsli.lumeo;
 
+import com.tinkerpop.blueprints.pgm.Edge;
+import com.tinkerpop.blueprints.pgm.Vertex;
+import de.jetsli.lumeo.util.AnyExecutor;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -22,7 +36,7 @@ import static org.junit.Assert.*;
  *
  * @author Peter Karich, info@jetsli.de
  */
-public class VertexFilterSequenceTest {
+public class VertexFilterSequenceTest extends SimpleLuceneTestBase {
     
     @Test public void testSetFilter() {
     }
@@ -34,4 +48,122 @@ public class VertexFilterSequenceTest {
     @Test public void testSearchAfter() {
         // TODO test!
     }
+
+    @Test public void testIterateAllSegments() {
+        for (int i = 0; i < 25; i++) {
+            g.addVertex(null);
+            // one segment per refresh
+            if (i % 10 == 0)
+                refresh();
+        }
+        g.addEdge(null, g.addVertex(null), g.addVertex(null), "knows");
+        refresh();
+        assertCount(27, new VertexFilterSequence(g).setN(4));
+        assertCount(27, new VertexFilterSequence(g));
+        assertCount(1, new EdgeFilterSequence(g).setN(1));
+    }
+
+    @Test public void testSharedTypeFilter() throws Exception {
+        g.addVertex(null);
+        g.addEdge(null, g.addVertex(null), g.addVertex(null), "knows");
+        refresh();
+
+        Filter f = new VertexFilterSequence(g).getBaseFilter();
+        assertSame(f, new VertexFilterSequence(g).getBaseFilter());
+        assertNotSame(f, new EdgeFilterSequence(g).getBaseFilter());
+        IndexSearcher searcher = g.getRaw().newUnmanagedSearcher();
+        try {
+            AtomicReaderContext ctx = searcher.getTopReaderContext().leaves()[0];
+            // the DocIdSet is calculated once per segment
+            assertSame(f.getDocIdSet(ctx, null), f.getDocIdSet(ctx, null));
+        } finally {
+            g.getRaw().releaseUnmanagedSearcher(searcher);
+        }
+        assertCount(3, new VertexFilterSequence(g));
+        assertCount(1, new EdgeFilterSequence(g));
+    }
+
+    @Test public void testForEachParallel() {
+        for (int i = 0; i < 25; i++) {
+            g.addVertex(null);
+            if (i % 10 == 0)
+                refresh();
+        }
+        g.addEdge(null, g.addVertex(null), g.addVertex(null), "knows");
+        refresh();
+
+        final Set<Object> ids = Collections.synchronizedSet(new HashSet<Object>());
+        // small partitions => several tasks per segment
+        new VertexFilterSequence(g).setPartitionSize(3).forEachParallel(4, new AnyExecutor<Object, Vertex>() {
+
+            @Override public Object execute(Vertex v) {
+                assertTrue(ids.add(v.getId()));
+                return null;
+            }
+        });
+        assertEquals(27, ids.size());
+
+        final AtomicInteger edges = new AtomicInteger();
+        new EdgeFilterSequence(g).forEachParallel(2, new AnyExecutor<Object, Edge>() {
+
+            @Override public Object execute(Edge e) {
+                edges.incrementAndGet();
+                return null;
+            }
+        });
+        assertEquals(1, edges.get());
+
+        try {
+            new VertexFilterSequence(g).forEachParallel(2, new AnyExecutor<Object, Vertex>() {
+
+                @Override public Object execute(Vertex v) {
+                    throw new IllegalStateException("failed");
+                }
+            });
+            assertTrue(false);
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    @Test public void testForEachParallelInterrupted() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            g.addVertex(null);
+        }
+        refresh();
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger visited = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger runningAfterReturn = new AtomicInteger(-1);
+        final ExecutorService executor = Executors.newFixedThreadPool(1);
+        Thread caller = new Thread() {
+
+            @Override public void run() {
+                try {
+                    new VertexFilterSequence(g).setPartitionSize(1).forEachParallel(executor, new AnyExecutor<Object, Vertex>() {
+
+                        @Override public Object execute(Vertex v) throws Exception {
+                            running.incrementAndGet();
+                            visited.incrementAndGet();
+                            started.countDown();
+                            Thread.sleep(200);
+                            running.decrementAndGet();
+                            return null;
+                        }
+                    });
+                } catch (RuntimeException ex) {
+                }
+                runningAfterReturn.set(running.get());
+            }
+        };
+        caller.start();
+        started.await();
+        caller.interrupt();
+        caller.join();
+        // the running scan finished before the searcher was released, the queued ones are skipped
+        assertEquals(0, runningAfterReturn.get());
+        assertEquals(1, visited.get());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
 }
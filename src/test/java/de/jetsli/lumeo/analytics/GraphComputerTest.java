@@ -0,0 +1,120 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.analytics;
+
+import com.tinkerpop.blueprints.pgm.Vertex;
+import de.jetsli.lumeo.SimpleLuceneTestBase;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich, info@jetsli.de
+ */
+public class GraphComputerTest extends SimpleLuceneTestBase {
+
+    @Test public void testPageRank() {
+        Vertex a = g.addVertex("a");
+        Vertex b = g.addVertex("b");
+        Vertex c = g.addVertex("c");
+        Vertex d = g.addVertex("d");
+        g.addEdge(null, a, c, "links");
+        g.addEdge(null, b, c, "links");
+        g.addEdge(null, d, c, "links");
+        g.addEdge(null, c, a, "links");
+        refresh();
+
+        GraphComputer computer = new GraphComputer(g).setThreads(2).setMaxSupersteps(100);
+        double[] ranks = computer.execute(new PageRank());
+        assertTrue(computer.getSupersteps() > 1);
+        assertTrue(computer.getSupersteps() < 100);
+        double sum = 0;
+        for (double r : ranks) {
+            sum += r;
+        }
+        assertEquals(1, sum, 1e-4);
+
+        double rankA = (Double) g.getVertex("a").getProperty("pagerank");
+        double rankB = (Double) g.getVertex("b").getProperty("pagerank");
+        double rankC = (Double) g.getVertex("c").getProperty("pagerank");
+        assertTrue(rankC > rankA);
+        assertTrue(rankA > rankB);
+        assertEquals(rankB, (Double) g.getVertex("d").getProperty("pagerank"), 1e-9);
+    }
+
+    @Test public void testConnectedComponents() {
+        Vertex a = g.addVertex("a");
+        Vertex b = g.addVertex("b");
+        Vertex c = g.addVertex("c");
+        Vertex d = g.addVertex("d");
+        Vertex e = g.addVertex("e");
+        g.addEdge(null, b, a, "knows");
+        g.addEdge(null, b, c, "knows");
+        g.addEdge(null, e, d, "knows");
+        refresh();
+
+        new GraphComputer(g).setThreads(2).execute(new ConnectedComponents());
+        assertEquals(a.getId(), g.getVertex("a").getProperty("component"));
+        assertEquals(a.getId(), g.getVertex("b").getProperty("component"));
+        assertEquals(a.getId(), g.getVertex("c").getProperty("component"));
+        assertEquals(d.getId(), g.getVertex("d").getProperty("component"));
+        assertEquals(d.getId(), g.getVertex("e").getProperty("component"));
+    }
+
+    @Test public void testRemovedVertex() {
+        Vertex a = g.addVertex("a");
+        Vertex b = g.addVertex("b");
+        Vertex x = g.addVertex("x");
+        // the edges stay after x is removed
+        g.addEdge(null, a, x, "knows");
+        g.addEdge(null, x, b, "knows");
+        g.removeVertex(x);
+        refresh();
+
+        GraphComputer computer = new GraphComputer(g).setThreads(2);
+        assertEquals(2, computer.getAdjacency().getVertexCount());
+        assertEquals(0, computer.getAdjacency().getOutDegree(0));
+        assertEquals(0, computer.getAdjacency().getInDegree(1));
+
+        computer.execute(new ConnectedComponents());
+        assertEquals(a.getId(), g.getVertex("a").getProperty("component"));
+        assertEquals(b.getId(), g.getVertex("b").getProperty("component"));
+
+        double[] ranks = computer.execute(new PageRank());
+        assertEquals(2, ranks.length);
+        assertEquals(ranks[0], ranks[1], 1e-9);
+    }
+
+    @Test public void testLongComponent() {
+        // the chain is longer than the default maximum of supersteps
+        Vertex prev = g.addVertex("v0");
+        for (int i = 1; i < 40; i++) {
+            Vertex v = g.addVertex("v" + i);
+            g.addEdge(null, prev, v, "next");
+            prev = v;
+        }
+        refresh();
+
+        GraphComputer computer = new GraphComputer(g).setThreads(2).setBatchSize(7);
+        computer.execute(new ConnectedComponents());
+        assertTrue(computer.isConverged());
+        assertTrue(computer.getSupersteps() > 30);
+        Object component = g.getVertex("v0").getProperty("component");
+        assertEquals(component, g.getVertex("v39").getProperty("component"));
+
+        computer.setMaxSupersteps(1).run(computer.getAdjacency(), new PageRank());
+        assertFalse(computer.isConverged());
+    }
+}
@@ -17,6 +17,7 @@ package de.jetsli.lumeo.perf;
 
 import com.tinkerpop.blueprints.pgm.Edge;
 import com.tinkerpop.blueprints.pgm.Vertex;
+import de.jetsli.lumeo.BulkLoader;
 import de.jetsli.lumeo.RawLucene;
 import java.util.ArrayList;
 import java.util.List;
@@ -25,6 +26,7 @@ import static org.junit.Assert.*;
 import de.jetsli.lumeo.SimpleLuceneTestBase;
 import de.jetsli.lumeo.util.StopWatch;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.lucene.document.Document;
 
 /**
@@ -89,6 +91,107 @@ public class PerformanceIntegrationTesting extends SimpleLuceneTestBase {
         }.run();
     }
 
+    @Test public void testBulkIndexing() {
+        new PerfRunner(100000, 5f) {
+
+            BulkLoader loader;
+            List<Long> previousVertices = new ArrayList<Long>();
+
+            @Override public void reinit() {
+                previousVertices.clear();
+                super.reinit();
+                loader = new BulkLoader(g);
+            }
+
+            @Override public void innerRun(int trial, int i) {
+                long v1;
+                long v2;
+
+                if (previousVertices.isEmpty() || rand.nextInt(10) < 5) {
+                    v1 = loader.addVertex(null);
+                    vertices++;
+                } else
+                    v1 = previousVertices.get(rand.nextInt(previousVertices.size()));
+
+                if (previousVertices.isEmpty() || rand.nextInt(10) < 5) {
+                    v2 = loader.addVertex(null);
+                    vertices++;
+                } else
+                    v2 = previousVertices.get(rand.nextInt(previousVertices.size()));
+
+                previousVertices.add(v1);
+                previousVertices.add(v2);
+                if (rand.nextInt(5000) < 10)
+                    previousVertices.clear();
+
+                loader.addEdge(null, v1, v2, "e" + i);
+                edges++;
+            }
+
+            @Override protected void beforeFlush() {
+                loader.close();
+            }
+
+            @Override protected void finalAssert() {
+                long vs1 = g.count(Vertex.class, RawLucene.TYPE, Vertex.class.getSimpleName());
+                long es2 = g.count(Edge.class, RawLucene.TYPE, Edge.class.getSimpleName());
+                assertEquals(vertices, vs1);
+                assertEquals(edges, es2);
+            }
+        }.run();
+    }
+
+    @Test public void testConcurrentIndexing() throws Exception {
+        final int items = 100000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        float singleSecs = 0;
+        for (int threads = 1; threads <= Math.max(2, cores); threads *= 2) {
+            reinitFileBasedGraph();
+            final int itemsPerThread = items / threads;
+            final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+            List<Thread> list = new ArrayList<Thread>();
+            for (int t = 0; t < threads; t++) {
+                final Random r = new Random(t);
+                list.add(new Thread() {
+
+                    @Override public void run() {
+                        try {
+                            // every thread works on its own vertices
+                            List<Vertex> vs = new ArrayList<Vertex>();
+                            for (int i = 0; i < itemsPerThread; i++) {
+                                if (vs.size() < 2 || r.nextInt(10) < 5)
+                                    vs.add(g.addVertex(null));
+                                Vertex v1 = vs.get(r.nextInt(vs.size()));
+                                Vertex v2 = vs.get(r.nextInt(vs.size()));
+                                g.addEdge(null, v1, v2, "e" + i);
+                                if (vs.size() > 1000)
+                                    vs.clear();
+                            }
+                        } catch (Throwable ex) {
+                            error.set(ex);
+                        }
+                    }
+                });
+            }
+            StopWatch sw = new StopWatch("threads" + threads).start();
+            for (Thread th : list) {
+                th.start();
+            }
+            for (Thread th : list) {
+                th.join();
+            }
+            g.getRaw().flush();
+            float secs = sw.stop().getSeconds();
+            if (error.get() != null)
+                throw new RuntimeException(error.get());
+
+            assertEquals(itemsPerThread * threads, g.count(Edge.class, RawLucene.TYPE, Edge.class.getSimpleName()));
+            if (threads == 1)
+                singleSecs = secs;
+            logger.info("threads:" + threads + ", indexing:" + secs + ", speedup:" + singleSecs / secs);
+        }
+    }
+
     @Test public void testFindByUserId() {
         new PerfRunner(300000, 8f) {
 
@@ -158,6 +261,7 @@ public class PerformanceIntegrationTesting extends SimpleLuceneTestBase {
             for (int i = 0; i < items / 2; i++) {
                 innerRun(-1, i);
             }
+            beforeFlush();
             g.getRaw().flush();
         }
 
@@ -173,6 +277,7 @@ public class PerformanceIntegrationTesting extends SimpleLuceneTestBase {
                 for (int i = 0; i < items; i++) {
                     innerRun(trial, i);
                 }
+                beforeFlush();
                 g.getRaw().flush();
                 float indexingTime = sw.stop().getSeconds();
                 sw = new StopWatch().start();
@@ -186,6 +291,9 @@ public class PerformanceIntegrationTesting extends SimpleLuceneTestBase {
             assertTrue("mean of benchmark should be less than " + expectedTime + " seconds but was " + res, res < expectedTime);
         }
 
+        protected void beforeFlush() {
+        }
+
         protected void finalAssert() {
         }
     }
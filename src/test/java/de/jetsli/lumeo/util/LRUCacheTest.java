@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich, info@jetsli.de
+ */
+public class LRUCacheTest {
+
+    @Test public void testEviction() {
+        LRUCache<Integer, String> cache = new LRUCache<Integer, String>(2, Long.MAX_VALUE, 1);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        assertEquals("a", cache.get(1));
+        cache.put(3, "c");
+        // 2 was least recently used
+        assertNull(cache.get(2));
+        assertEquals("a", cache.get(1));
+        assertEquals("c", cache.get(3));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test public void testWeight() {
+        LRUCache<Integer, String> cache = new LRUCache<Integer, String>(100, 5, 1) {
+
+            @Override protected long weigh(String value) {
+                return value.length();
+            }
+        };
+        cache.put(1, "ab");
+        cache.put(2, "cd");
+        cache.put(3, "ef");
+        assertEquals(2, cache.size());
+        assertEquals(4, cache.getWeight());
+        assertNull(cache.get(1));
+    }
+
+    @Test public void testStamp() {
+        LRUCache<Integer, String> cache = new LRUCache<Integer, String>(10);
+        long stamp = cache.getStamp(1);
+        cache.remove(1);
+        assertFalse(cache.putIfUnchanged(1, "a", stamp));
+        assertNull(cache.get(1));
+        assertTrue(cache.putIfUnchanged(1, "a", cache.getStamp(1)));
+        assertEquals("a", cache.get(1));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich, info@jetsli.de
+ */
+public class LabelDictionaryTest {
+
+    @Test public void testOrdinalsAndBits() throws Exception {
+        RAMDirectory dir = new RAMDirectory();
+        IndexWriter w = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_40, new KeywordAnalyzer()));
+        String[] labels = {"knows", "likes", null, "knows", "Knows"};
+        for (int i = 0; i < labels.length; i++) {
+            Document doc = new Document();
+            doc.add(new StringField("id", "" + i, Field.Store.YES));
+            if (labels[i] != null)
+                doc.add(new StringField("label", labels[i], Field.Store.YES));
+            w.addDocument(doc);
+        }
+        w.deleteDocuments(new Term("id", "3"));
+        w.close();
+
+        DirectoryReader dr = DirectoryReader.open(dir);
+        AtomicReader reader = SlowCompositeReaderWrapper.wrap(dr);
+        LabelDictionary dict = new LabelDictionary("label");
+        assertEquals(-1, dict.getOrdinal("knows"));
+        assertEquals("knows", dict.getLabel(reader, 0));
+        assertEquals("likes", dict.getLabel(reader, 1));
+        assertNull(dict.getLabel(reader, 2));
+        assertEquals(3, dict.size());
+        assertEquals("Knows", dict.getLabel(dict.getOrdinal("Knows")));
+
+        assertEquals(2, dict.getBits(reader, "knows").cardinality());
+        assertNull(dict.getBits(reader, "unknown"));
+        assertSame(dict.getBits(reader, "likes"), dict.getBits(reader, "likes"));
+
+        // deleted docs are excluded by the filter
+        DocIdSet set = dict.newFilter("knows", "likes").getDocIdSet(reader.getContext(), reader.getLiveDocs());
+        DocIdSetIterator iter = set.iterator();
+        assertEquals(0, iter.nextDoc());
+        assertEquals(1, iter.nextDoc());
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, iter.nextDoc());
+        // the cached bitset was not modified
+        assertEquals(2, dict.getBits(reader, "knows").cardinality());
+        assertNull(dict.newFilter("unknown").getDocIdSet(reader.getContext(), null));
+        dr.close();
+    }
+}
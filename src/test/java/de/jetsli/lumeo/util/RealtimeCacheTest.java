@@ -0,0 +1,74 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import org.apache.lucene.document.Document;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich, info@jetsli.de
+ */
+public class RealtimeCacheTest {
+
+    @Test public void testEvict() {
+        RealtimeCache cache = new RealtimeCache(2);
+        Document d1 = new Document();
+        Document d2 = new Document();
+        cache.put(1, d1, 1);
+        cache.put(2, d2, 2);
+        cache.put(3, RealtimeCache.DELETED, 3);
+        assertSame(d1, cache.get(1));
+        assertSame(RealtimeCache.DELETED, cache.get(3));
+        assertNull(cache.get(4));
+
+        // entries of older generations are still visible
+        assertEquals(1, cache.evict(1));
+        assertNull(cache.get(1));
+        assertSame(d2, cache.get(2));
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(2));
+    }
+
+    @Test public void testOlderGenerationDoesNotOverwrite() {
+        RealtimeCache cache = new RealtimeCache(1);
+        Document d1 = new Document();
+        Document d2 = new Document();
+        cache.put(1, d2, 5);
+        cache.put(1, d1, 4);
+        assertSame(d2, cache.get(1));
+        assertEquals(1, cache.size());
+    }
+
+    @Test public void testGrowAndShrink() {
+        RealtimeCache cache = new RealtimeCache(1);
+        Document d = new Document();
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, d, i);
+        }
+        assertEquals(1000, cache.size());
+        assertEquals(990, cache.evict(989));
+        for (int i = 0; i < 1000; i++) {
+            if (i < 990)
+                assertNull(cache.get(i));
+            else
+                assertSame(d, cache.get(i));
+        }
+    }
+}
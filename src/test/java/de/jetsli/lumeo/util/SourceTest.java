@@ -0,0 +1,79 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import java.util.Date;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich, info@jetsli.de
+ */
+public class SourceTest {
+
+    @Test public void testEncodeAndGet() {
+        Source s = new Source();
+        s.put("name", "peter ä");
+        s.put("age", 31);
+        s.put("weight", 0.75);
+        s.put("time", 12L);
+        s.put("date", new Date(1000));
+        s.put("active", true);
+        s.put("ratio", 0.5f);
+
+        // padding to check offset handling
+        BytesRef tmp = s.toBytes();
+        byte[] padded = new byte[tmp.length + 3];
+        System.arraycopy(tmp.bytes, tmp.offset, padded, 3, tmp.length);
+        Source loaded = new Source(new BytesRef(padded, 3, tmp.length));
+
+        assertEquals(0.75, loaded.get("weight"));
+        assertEquals("peter ä", loaded.get("name"));
+        assertEquals(31, loaded.get("age"));
+        assertEquals(12L, loaded.get("time"));
+        assertEquals(new Date(1000), loaded.get("date"));
+        assertEquals(true, loaded.get("active"));
+        assertEquals(0.5f, loaded.get("ratio"));
+        assertNull(loaded.get("nam"));
+        assertEquals(Helper.set("name", "age", "weight", "time", "date", "active", "ratio"), loaded.keys());
+
+        loaded.remove("age");
+        loaded.put("name", "different");
+        Source again = new Source(loaded.toBytes());
+        assertNull(again.get("age"));
+        assertEquals("different", again.get("name"));
+        assertEquals(0.75, again.get("weight"));
+    }
+
+    @Test public void testEmpty() {
+        Source s = new Source(null);
+        assertTrue(s.isEmpty());
+        assertNull(s.get("test"));
+        assertTrue(new Source(s.toBytes()).isEmpty());
+    }
+
+    @Test public void testNullValue() {
+        Source s = new Source();
+        s.put("name", "peter");
+        try {
+            s.put("name", null);
+            fail("null must not be stored");
+        } catch (IllegalArgumentException ex) {
+        }
+        assertEquals("peter", new Source(s.toBytes()).get("name"));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *  Copyright 2011 Peter Karich info@jetsli.de
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.jetsli.lumeo.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich, info@jetsli.de
+ */
+public class TermFilterTest {
+
+    private DirectoryReader dr;
+    private AtomicReader reader;
+
+    @Before public void setUp() throws Exception {
+        RAMDirectory dir = new RAMDirectory();
+        IndexWriter w = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_40, new KeywordAnalyzer()));
+        for (int i = 0; i < 1000; i++) {
+            Document doc = new Document();
+            doc.add(new StringField("id", "" + i, Field.Store.NO));
+            doc.add(new StringField("type", i % 2 == 0 ? "even" : "odd", Field.Store.NO));
+            doc.add(new LongField("num", i % 250, Field.Store.NO));
+            if (i % 100 == 0)
+                doc.add(new StringField("rare", "yes", Field.Store.NO));
+            w.addDocument(doc);
+        }
+        w.deleteDocuments(new Term("id", "200"));
+        w.close();
+        dr = DirectoryReader.open(dir);
+        reader = SlowCompositeReaderWrapper.wrap(dr);
+    }
+
+    @After public void tearDown() throws Exception {
+        dr.close();
+    }
+
+    List<Integer> docs(DocIdSet set) throws Exception {
+        List<Integer> list = new ArrayList<Integer>();
+        DocIdSetIterator iter = set.iterator();
+        int doc;
+        while ((doc = iter.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            list.add(doc);
+        }
+        return list;
+    }
+
+    @Test public void testSparseAndDense() throws Exception {
+        DocIdSet rare = new TermFilter("rare", new BytesRef("yes")).getDocIdSet(reader.getContext(), reader.getLiveDocs());
+        assertTrue(rare instanceof IntArrayDocIdSet);
+        assertEquals(9, docs(rare).size());
+        assertFalse(docs(rare).contains(200));
+
+        DocIdSetIterator iter = rare.iterator();
+        assertEquals(300, iter.advance(101));
+        assertEquals(300, iter.docID());
+        assertEquals(400, iter.nextDoc());
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, iter.advance(901));
+        // a conjunction may advance an exhausted iterator
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, iter.advance(950));
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, iter.nextDoc());
+
+        iter = rare.iterator();
+        while (iter.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+        }
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, iter.advance(10));
+
+        DocIdSet even = new TermFilter("type", new BytesRef("even")).getDocIdSet(reader.getContext(), reader.getLiveDocs());
+        assertTrue(even instanceof FixedBitSet);
+        assertEquals(499, docs(even).size());
+
+        assertEquals(0, docs(new TermFilter("type", new BytesRef("none")).getDocIdSet(reader.getContext(), null)).size());
+    }
+
+    @Test public void testAndFilter() throws Exception {
+        TermFilter rare = new TermFilter("rare", new BytesRef("yes"));
+        TermFilter even = new TermFilter("type", new BytesRef("even"));
+        TermFilter odd = new TermFilter("type", new BytesRef("odd"));
+        assertEquals(9, docs(new AndFilter().add(even).add(rare).getDocIdSet(reader.getContext(), reader.getLiveDocs())).size());
+        assertEquals(0, docs(new AndFilter().add(odd).add(rare).getDocIdSet(reader.getContext(), reader.getLiveDocs())).size());
+        // only random access sets
+        assertEquals(0, docs(new AndFilter().add(odd).add(even).getDocIdSet(reader.getContext(), null)).size());
+        // only iterated sets
+        List<Integer> list = docs(new AndFilter().add(rare).add(new TermFilter("id", new BytesRef("300"))).
+                getDocIdSet(reader.getContext(), null));
+        assertEquals(1, list.size());
+        assertEquals(300, (int) list.get(0));
+    }
+
+    @Test public void testLongTermsFilter() throws Exception {
+        DocIdSet set = new LongTermsFilter("num", 2, 1, 2, 1000).getDocIdSet(reader.getContext(), reader.getLiveDocs());
+        assertTrue(set instanceof IntArrayDocIdSet);
+        List<Integer> list = docs(set);
+        assertEquals(8, list.size());
+        assertEquals(1, (int) list.get(0));
+        assertEquals(2, (int) list.get(1));
+        assertEquals(251, (int) list.get(2));
+
+        long[] ids = new long[50];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 180 + i;
+        }
+        // 200 is deleted
+        set = new LongTermsFilter("num", ids).getDocIdSet(reader.getContext(), reader.getLiveDocs());
+        assertTrue(set instanceof FixedBitSet);
+        assertEquals(199, docs(set).size());
+
+        assertEquals(0, docs(new LongTermsFilter("num", 1000).getDocIdSet(reader.getContext(), null)).size());
+    }
+}